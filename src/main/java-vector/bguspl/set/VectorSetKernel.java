@@ -0,0 +1,90 @@
+package bguspl.set;
+
+import java.util.Arrays;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The Vector API batch kernel: folds the packed cards of as many candidates at once as the preferred long vector has
+ * lanes, using the same lane arithmetic as UtilImpl.testSet. Cards are gathered into contiguous columns with scalar
+ * loads, since indexed vector loads are not reliably compiled by every JDK that ships the incubator module.
+ * <p>
+ * Only compiled by the "vector" build profile and only used when Config.vectorKernel is set and the
+ * jdk.incubator.vector module is added at runtime; UtilImpl falls back to its scalar kernel otherwise.
+ */
+final class VectorSetKernel implements SetBatchKernel {
+
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+    /**
+     * The number of candidates whose packed cards are gathered at a time.
+     */
+    private static final int CHUNK = 1024;
+
+    private final int featureSize;
+    private final long[] packedCards;
+    private final long laneBits;
+    private final long laneLowBits;
+    private final long laneHighBits;
+
+    VectorSetKernel(int featureSize, long[] packedCards, long laneBits, long laneLowBits, long laneHighBits) {
+        this.featureSize = featureSize;
+        this.packedCards = packedCards;
+        this.laneBits = laneBits;
+        this.laneLowBits = laneLowBits;
+        this.laneHighBits = laneHighBits;
+    }
+
+    @Override
+    public void testSets(int[] flatCandidates, int count, boolean[] out) {
+        int width = SPECIES.length();
+        int chunk = CHUNK - CHUNK % width;
+        long[] any = new long[chunk];
+        long[] all = new long[chunk];
+        long[] cards = new long[chunk];
+
+        for (int first = 0; first < count; first += chunk) {
+            int size = Math.min(chunk, count - first);
+            int bound = size - size % width;
+            Arrays.fill(any, 0L);
+            Arrays.fill(all, -1L);
+            for (int m = 0; m < featureSize; ++m) {
+                // gather card m of every candidate into a contiguous column, then fold it in lane by lane
+                for (int j = 0; j < size; ++j)
+                    cards[j] = packedCards[flatCandidates[(first + j) * featureSize + m]];
+                int j = 0;
+                for (; j < bound; j += width) {
+                    LongVector column = LongVector.fromArray(SPECIES, cards, j);
+                    LongVector.fromArray(SPECIES, any, j).or(column).intoArray(any, j);
+                    LongVector.fromArray(SPECIES, all, j).and(column).intoArray(all, j);
+                }
+                for (; j < size; ++j) {
+                    any[j] |= cards[j];
+                    all[j] &= cards[j];
+                }
+            }
+
+            int j = 0;
+            for (; j < bound; j += width) {
+                LongVector missingValues = LongVector.fromArray(SPECIES, any, j).not().and(laneBits);
+                LongVector illegal = nonEmptyLanes(missingValues)
+                        .and(nonEmptyLanes(LongVector.fromArray(SPECIES, all, j)).not());
+                long legal = illegal.compare(VectorOperators.EQ, 0L).toLong();
+                for (int lane = 0; lane < width; ++lane)
+                    out[first + j + lane] = (legal & (1L << lane)) != 0;
+            }
+            for (; j < size; ++j)
+                out[first + j] = (nonEmptyLanes(~any[j] & laneBits) & ~nonEmptyLanes(all[j])) == 0;
+        }
+    }
+
+    private LongVector nonEmptyLanes(LongVector lanes) {
+        return lanes.and(laneLowBits).add(laneLowBits).or(lanes).and(laneHighBits);
+    }
+
+    private long nonEmptyLanes(long lanes) {
+        return (((lanes & laneLowBits) + laneLowBits) | lanes) & laneHighBits;
+    }
+}
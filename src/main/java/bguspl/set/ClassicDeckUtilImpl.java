@@ -0,0 +1,49 @@
+package bguspl.set;
+
+/**
+ * UtilImpl specialized to the classic deck of 4 features with 3 values each: every loop bound and mask is a
+ * constant, and the third card of a set is looked up by its first two.
+ */
+final class ClassicDeckUtilImpl extends UtilImpl {
+
+    private static final int FEATURE_SIZE = 3;
+    private static final int FEATURE_COUNT = 4;
+    private static final int DECK_SIZE = 81;
+
+    /**
+     * The card that completes cards a and b into a legal set is at a * DECK_SIZE + b (a itself if a == b).
+     */
+    private static final byte[] COMPLETION = new byte[DECK_SIZE * DECK_SIZE];
+
+    static {
+        for (int a = 0; a < DECK_SIZE; ++a)
+            for (int b = 0; b < DECK_SIZE; ++b) {
+                int c = 0;
+                for (int f = 0, weight = 1; f < FEATURE_COUNT; ++f, weight *= FEATURE_SIZE) {
+                    // the three values of a feature sum to 0 mod 3 both when they are all the same and all different
+                    int value = (2 * FEATURE_SIZE - a / weight % FEATURE_SIZE - b / weight % FEATURE_SIZE) % FEATURE_SIZE;
+                    c += value * weight;
+                }
+                COMPLETION[a * DECK_SIZE + b] = (byte) c;
+            }
+    }
+
+    static boolean supports(Config config) {
+        return config.featureSize == FEATURE_SIZE && config.featureCount == FEATURE_COUNT;
+    }
+
+    ClassicDeckUtilImpl(Config config) {
+        super(config);
+    }
+
+    @Override
+    public boolean testSet(int[] cards) {
+        if (cards.length != FEATURE_SIZE) return super.testSet(cards);
+        return cards[2] == COMPLETION[cards[0] * DECK_SIZE + cards[1]];
+    }
+
+    @Override
+    int completeSet(int[] cards, int[] combination) {
+        return COMPLETION[cards[combination[0]] * DECK_SIZE + cards[combination[1]]];
+    }
+}
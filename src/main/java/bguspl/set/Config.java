@@ -36,6 +36,26 @@ public class Config {
      */
     public final int deckSize;
 
+    /**
+     * The number of cards from which Util.findSets splits its search across a fork/join pool (0 or less: never)
+     */
+    public final int parallelSearchThreshold;
+
+    /**
+     * Whether to use set-test kernels specialized to the deck shape when there are any (false: always the generic one)
+     */
+    public final boolean specializedKernels;
+
+    /**
+     * Whether to check batches of candidate sets with the Vector API kernel when it is available (false: the scalar one)
+     */
+    public final boolean vectorKernel;
+
+    /**
+     * The seed of the random choices of the dealer (0: a different game every run)
+     */
+    public final long randomSeed;
+
     /**
      * The number of human players in the game.
      */
@@ -56,6 +76,11 @@ public class Config {
      */
     public final boolean hints;
 
+    /**
+     * The number of table analyses (sets and hints) kept for boards that recur (0 or less: none)
+     */
+    public final int analysisCacheSize;
+
     /**
      * The number of milliseconds until the dealer reshuffles the deck (0 show timer since last action, -1 show nothing)
      */
@@ -66,6 +91,22 @@ public class Config {
      */
     public final long turnTimeoutWarningMillis;
 
+    /**
+     * The maximum number of times per second the countdown display is updated
+     */
+    public final int countdownFrameRate;
+
+    /**
+     * Whether the dealer picks the incoming cards so that the table has a set whenever the remaining cards allow it
+     */
+    public final boolean guaranteedSetDealing;
+
+    /**
+     * The fraction of the cards the dealer replaces when the countdown times out (1: all of them, 0: only as many as
+     * needed for a set)
+     */
+    public final double timeoutRedealFraction;
+
     /**
      * The number of milliseconds a player gets frozen for when he scores a point
      */
@@ -81,6 +122,16 @@ public class Config {
      */
     public final long tableDelayMillis;
 
+    /**
+     * The number of milliseconds the dealer waits for all the player threads to start
+     */
+    public final long startupTimeoutMillis;
+
+    /**
+     * The number of milliseconds the dealer waits for the player threads to terminate before interrupting them
+     */
+    public final long shutdownTimeoutMillis;
+
     /**
      * The number of milliseconds to pause at the end of the game before closing
      */
@@ -197,6 +248,10 @@ public class Config {
         featureSize = Integer.parseInt(properties.getProperty("FeatureSize", "3"));
         featureCount = Integer.parseInt(properties.getProperty("FeatureCount", "4"));
         deckSize = (int) Math.pow(featureSize, featureCount);
+        parallelSearchThreshold = Integer.parseInt(properties.getProperty("ParallelSearchThreshold", "1000"));
+        specializedKernels = Boolean.parseBoolean(properties.getProperty("SpecializedKernels", "True"));
+        vectorKernel = Boolean.parseBoolean(properties.getProperty("VectorKernel", "False"));
+        randomSeed = Long.parseLong(properties.getProperty("RandomSeed", "0"));
 
         // gameplay settings
         humanPlayers = Integer.parseInt(properties.getProperty("HumanPlayers", "2"));
@@ -204,11 +259,19 @@ public class Config {
         players = humanPlayers + computerPlayers;
 
         hints = Boolean.parseBoolean(properties.getProperty("Hints", "False"));
+        analysisCacheSize = Integer.parseInt(properties.getProperty("AnalysisCacheSize", "256"));
         turnTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutSeconds", "60")) * 1000.0);
         turnTimeoutWarningMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutWarningSeconds", "60")) * 1000.0);
+        countdownFrameRate = Integer.parseInt(properties.getProperty("CountdownFrameRate", "30"));
+        guaranteedSetDealing = Boolean.parseBoolean(properties.getProperty("GuaranteedSetDealing", "False"));
+        String timeoutRedeal = properties.getProperty("TimeoutRedeal", "Full");
+        timeoutRedealFraction = timeoutRedeal.equalsIgnoreCase("Full") ? 1 :
+                timeoutRedeal.equalsIgnoreCase("Minimal") ? 0 : Double.parseDouble(timeoutRedeal);
         pointFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PointFreezeSeconds", "1")) * 1000.0);
         penaltyFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PenaltyFreezeSeconds", "3")) * 1000.0);
         tableDelayMillis = (long) (Double.parseDouble(properties.getProperty("TableDelaySeconds", "0.1")) * 1000.0);
+        startupTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("StartupTimeoutSeconds", "5")) * 1000.0);
+        shutdownTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("ShutdownTimeoutSeconds", "1")) * 1000.0);
         endGamePauseMillies = (long) (Double.parseDouble(properties.getProperty("EndGamePauseSeconds", "5")) * 1000.0);
 
         // ui settings
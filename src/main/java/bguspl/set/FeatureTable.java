@@ -0,0 +1,55 @@
+package bguspl.set;
+
+/**
+ * The features of every card in the deck, computed once per configuration.
+ */
+public class FeatureTable {
+
+    /**
+     * The number of features on the cards.
+     */
+    private final int featureCount;
+
+    /**
+     * Feature i of a card is stored at card * featureCount + i, in the order of Util.cardToFeatures.
+     */
+    private final int[] features;
+
+    public FeatureTable(Config config) {
+        featureCount = config.featureCount;
+        features = new int[config.deckSize * featureCount];
+        for (int card = 0; card < config.deckSize; ++card) {
+            int rest = card;
+            for (int i = featureCount - 1; i >= 0; --i) {
+                features[card * featureCount + i] = rest % config.featureSize;
+                rest /= config.featureSize;
+            }
+        }
+    }
+
+    /**
+     * @return - the number of features on the cards.
+     */
+    public int featureCount() {
+        return featureCount;
+    }
+
+    /**
+     * @param card    - the card id.
+     * @param feature - the feature index (between 0 and featureCount - 1).
+     * @return - the value of the feature on the card.
+     */
+    public int feature(int card, int feature) {
+        return features[card * featureCount + feature];
+    }
+
+    /**
+     * Copies the features of a card.
+     *
+     * @param card - the card id.
+     * @param dest - an array of at least featureCount entries to copy the features to.
+     */
+    public void copyFeatures(int card, int[] dest) {
+        System.arraycopy(features, card * featureCount, dest, 0, featureCount);
+    }
+}
@@ -43,7 +43,7 @@ public class Main {
         logger = initLogger();
         ThreadLogger.logStart(logger, Thread.currentThread().getName());
         Config config = new Config(logger, "config.properties");
-        Util util = new UtilImpl(config);
+        Util util = UtilImpl.forConfig(config);
 
         Player[] players = new Player[config.players];
         UserInterface ui = null;
@@ -0,0 +1,15 @@
+package bguspl.set;
+
+/**
+ * Checks batches of set candidates over the packed card encoding of UtilImpl.
+ * Implementations other than the scalar one are optional and loaded by name (see UtilImpl).
+ */
+interface SetBatchKernel {
+
+    /**
+     * @param flatCandidates - the candidates one after the other, featureSize card ids each.
+     * @param count          - the number of candidates to check.
+     * @param out            - receives at index i whether candidate i forms a legal set.
+     */
+    void testSets(int[] flatCandidates, int count, boolean[] out);
+}
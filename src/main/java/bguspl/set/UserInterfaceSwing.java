@@ -6,6 +6,7 @@ import javax.swing.*;
 import java.awt.*;
 import java.io.FileNotFoundException;
 import java.net.URL;
+import java.util.BitSet;
 import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Logger;
@@ -105,7 +106,7 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         private final Image emptyCard;
         private final Image[] deck;
         private final Image[][] grid;
-        private final boolean[][][] playerTokens;
+        private final BitSet[][] playerTokens; // the players with a token on each cell
         private final JLabel[][] tokenText;
 
         private Image loadImageResource(String filename) {
@@ -130,11 +131,12 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
             grid = new Image[config.rows][config.columns];
             tokenText = new JLabel[config.rows][config.columns];
-            playerTokens = new boolean[config.players][config.rows][config.columns];
+            playerTokens = new BitSet[config.rows][config.columns];
             for (int row = 0; row < config.rows; row++) {
                 for (int column = 0; column < config.columns; column++) {
                     // init the cards on the table grid as empty cards
                     grid[row][column] = emptyCard;
+                    playerTokens[row][column] = new BitSet(config.players);
 
                     // init the JLabel selection overlay
                     tokenText[row][column] = new JLabel("");
@@ -167,7 +169,7 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         private void placeToken(int player, int slot) {
             int row = slot / config.columns;
             int column = slot % config.columns;
-            playerTokens[player][row][column] = true;
+            playerTokens[row][column].set(player);
             tokenText[row][column].setText(generatePlayersTokenText(row, column));
         }
 
@@ -179,28 +181,26 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         private void removeTokens(int slot) {
             int row = slot / config.columns;
             int column = slot % config.columns;
-            for (int player = 0; player < playerTokens.length; player++) {
-                playerTokens[player][row][column] = false;
-                tokenText[row][column].setText(generatePlayersTokenText(row, column));
-            }
+            playerTokens[row][column].clear();
+            tokenText[row][column].setText("");
         }
 
         private void removeToken(int player, int slot) {
             int row = slot / config.columns;
             int column = slot % config.columns;
-            playerTokens[player][row][column] = false;
+            playerTokens[row][column].clear(player);
             tokenText[row][column].setText(generatePlayersTokenText(row, column));
         }
 
         private String generatePlayersTokenText(int row, int column) {
-            String text = "";
-            for (int player = 0; player < config.players; player++) {
-                if (playerTokens[player][row][column])
-                    text = text.concat(config.playerNames[player] + ", ");
+            StringBuilder text = new StringBuilder();
+            BitSet players = playerTokens[row][column];
+            for (int player = players.nextSetBit(0); player >= 0; player = players.nextSetBit(player + 1)) {
+                if (text.length() > 0)
+                    text.append(", ");
+                text.append(config.playerNames[player]);
             }
-            if (text.length() < 2)
-                return "";
-            return text.substring(0, text.length() - 2);
+            return text.toString();
         }
 
         @Override
@@ -1,12 +1,20 @@
 package bguspl.set;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * An interface for general utilities provided for convenience.
  */
 public interface Util {
 
+    /**
+     * Returns the precomputed features of all cards in the deck.
+     *
+     * @return - the feature table of the configured deck.
+     */
+    FeatureTable featureTable();
+
     /**
      * Converts a card id to an array of features (of config.featureCount values between 0 and config.featuresSize - 1)
      *
@@ -31,6 +39,15 @@ public interface Util {
      */
     boolean testSet(int[] cards);
 
+    /**
+     * Checks a batch of candidates at once (see testSet method).
+     *
+     * @param flatCandidates - the candidates one after the other, k card ids each.
+     * @param k              - the number of cards in every candidate.
+     * @param out            - receives at index i whether candidate i forms a legal set (flatCandidates.length / k entries at least).
+     */
+    void testSets(int[] flatCandidates, int k, boolean[] out);
+
     /**
      * Finds and returns up to count sets in the given collection of cards.
      *
@@ -40,6 +57,52 @@ public interface Util {
      */
     List<int[]> findSets(List<Integer> deck, int count);
 
+    /**
+     * Lazily streams the sets in the given cards, in the same order as findSets. Nothing is searched beyond what the
+     * stream consumes, and the stream can be made parallel.
+     *
+     * @param cards - an array of distinct card ids.
+     * @return - a stream of integer arrays, each one contains the card ids of a legal set (sorted).
+     */
+    Stream<int[]> streamSets(int[] cards);
+
+    /**
+     * Checks if the given cards contain a legal set, stopping at the first one found.
+     *
+     * @param cards - an array of distinct card ids.
+     * @return - true iff there is at least one legal set in the cards.
+     */
+    boolean hasAnySet(int[] cards);
+
+    /**
+     * Counts the sets in the given cards without materializing them.
+     *
+     * @param cards - an array of distinct card ids.
+     * @return - the number of legal sets in the cards.
+     */
+    long countSets(int[] cards);
+
+    /**
+     * Counts the sets in the given cards in time bounded by the deck size rather than the number of cards. With
+     * 3 values per feature, sets are exactly the triples summing to zero in Z_3^featureCount, which a transform over
+     * the whole deck counts in O(deckSize * featureCount) for any number of cards. Other decks fall back to countSets
+     * (with more values sets are not affine lines, so the transform does not apply).
+     *
+     * @param cards - an array of card ids.
+     * @return - the number of legal sets in the cards.
+     */
+    long countSetsExact(int[] cards);
+
+    /**
+     * Computes the card that completes featureSize - 1 distinct cards into a legal set. Only defined for a
+     * featureSize of at least 3: with fewer values the completion is one of the given cards.
+     *
+     * @param cards - an array of featureSize - 1 distinct card ids.
+     * @return - the id of the completing card, or -1 if the cards are not part of any legal set (always -1 when
+     *           featureSize is below 3).
+     */
+    int completeSet(int[] cards);
+
     /**
      * Spin a random number of times (for debugging/testing).
      */
@@ -3,8 +3,12 @@ package bguspl.set;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Spliterator;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.stream.IntStream;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The implementation of the UserInterface interface.
@@ -13,48 +17,218 @@ public class UtilImpl implements Util {
 
     private final Config config;
 
+    /**
+     * The features of every card, looked up instead of recomputed.
+     */
+    private final FeatureTable featureTable;
+
+    /**
+     * The combination selecting all the featureSize - 1 cards passed to completeSet(int[]).
+     */
+    private final int[] allCards;
+
+    /**
+     * Every card packed into a single long: feature f occupies the featureSize bits starting at f * featureSize
+     * (f = 0 being the least significant digit of the card id), and only the bit of the card's value is set.
+     * Null if a card does not fit in 64 bits, in which case the per-feature code paths are used.
+     */
+    private final long[] packedCards;
+
+    /**
+     * Lane masks for the packed encoding: all used bits, the lowest bit of every lane, the highest bit of every lane
+     * and all lane bits but the highest one.
+     */
+    private final long laneBits;
+    private final long laneLowestBits;
+    private final long laneHighBits;
+    private final long laneLowBits;
+
+    /**
+     * The name of the Vector API batch kernel, which is only compiled by the "vector" build profile.
+     */
+    private static final String VECTOR_KERNEL = "bguspl.set.VectorSetKernel";
+
+    /**
+     * The largest feature count for which the sums of countSetsExact fit in a long (|S(x)|^3 summed over 3^n x).
+     */
+    private static final int MAX_TRANSFORM_FEATURES = 13;
+
+    /**
+     * Checks batches of candidates over the packed encoding: the Vector API kernel if it is available, the scalar
+     * one otherwise. Null if the packed encoding is unavailable.
+     */
+    private final SetBatchKernel batchKernel;
+
+    /**
+     * Creates the Util implementation for the given configuration: a kernel specialized to its deck shape if there is
+     * one and the configuration does not ask for the generic one, this class otherwise.
+     *
+     * @param config - the game configuration.
+     * @return - the utilities for the configured deck.
+     */
+    public static Util forConfig(Config config) {
+        if (config.specializedKernels && ClassicDeckUtilImpl.supports(config)) return new ClassicDeckUtilImpl(config);
+        return new UtilImpl(config);
+    }
+
     public UtilImpl(Config config) {
         this.config = config;
+        featureTable = new FeatureTable(config);
+        allCards = new int[Math.max(config.featureSize - 1, 0)];
+        Arrays.setAll(allCards, i -> i);
+
+        int width = config.featureSize;
+        if (width >= 2 && width * config.featureCount <= Long.SIZE) {
+            long lane = width == Long.SIZE ? -1L : (1L << width) - 1;
+            long bits = 0, lowest = 0, high = 0;
+            for (int f = 0; f < config.featureCount; ++f) {
+                bits |= lane << (f * width);
+                lowest |= 1L << (f * width);
+                high |= 1L << (f * width + width - 1);
+            }
+            laneBits = bits;
+            laneLowestBits = lowest;
+            laneHighBits = high;
+            laneLowBits = bits & ~high;
+
+            packedCards = new long[config.deckSize];
+            for (int card = 0; card < config.deckSize; ++card) {
+                long packed = 0;
+                for (int f = 0; f < config.featureCount; ++f)
+                    packed |= 1L << (f * width + featureTable.feature(card, config.featureCount - 1 - f));
+                packedCards[card] = packed;
+            }
+
+            SetBatchKernel vectorKernel = config.vectorKernel ? loadVectorKernel() : null;
+            batchKernel = vectorKernel != null ? vectorKernel : this::testPackedSets;
+        } else {
+            laneBits = laneLowestBits = laneHighBits = laneLowBits = 0;
+            packedCards = null;
+            batchKernel = null;
+        }
     }
 
-    private void cardToFeatures(int card, int[] features) {
-        for (int i = config.featureCount - 1; i >= 0; --i) {
-            features[i] = card % config.featureSize;
-            card /= config.featureSize;
+    /**
+     * @return - the Vector API batch kernel (see Config.vectorKernel), or null if it was not compiled in or the
+     * jdk.incubator.vector module is not available at runtime.
+     */
+    private SetBatchKernel loadVectorKernel() {
+        try {
+            return (SetBatchKernel) Class.forName(VECTOR_KERNEL)
+                    .getDeclaredConstructor(int.class, long[].class, long.class, long.class, long.class)
+                    .newInstance(config.featureSize, packedCards, laneBits, laneLowBits, laneHighBits);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
         }
     }
 
+    @Override
+    public FeatureTable featureTable() {
+        return featureTable;
+    }
+
     @Override
     public int[] cardToFeatures(int card) {
         int[] features = new int[config.featureCount];
-        cardToFeatures(card, features);
+        featureTable.copyFeatures(card, features);
         return features;
     }
 
     @Override
     public int[][] cardsToFeatures(int[] cards) {
         int[][] features = new int[cards.length][config.featureCount];
-        IntStream.range(0, cards.length).forEach(i -> cardToFeatures(cards[i], features[i]));
+        for (int i = 0; i < cards.length; ++i)
+            featureTable.copyFeatures(cards[i], features[i]);
         return features;
     }
 
     @Override
     public boolean testSet(int[] cards) {
-        int[][] features = cardsToFeatures(Arrays.copyOf(cards, cards.length));
+        if (packedCards == null || cards.length != config.featureSize) return testSetByFeatures(cards);
+
+        long any = 0, all = -1L;
+        for (int card : cards) {
+            any |= packedCards[card];
+            all &= packedCards[card];
+        }
+        return isPackedSet(any, all);
+    }
+
+    /**
+     * @param any - the bitwise or of the packed cards.
+     * @param all - the bitwise and of the packed cards.
+     * @return - true iff the featureSize cards form a legal set.
+     */
+    private boolean isPackedSet(long any, long all) {
+        // a feature is legal iff all cards share its value (its lane in all is not empty)
+        // or all of its values appear (its lane in any is full, i.e. no value is missing)
+        long missingValues = ~any & laneBits;
+        return (nonEmptyLanes(missingValues) & ~nonEmptyLanes(all)) == 0;
+    }
+
+    @Override
+    public void testSets(int[] flatCandidates, int k, boolean[] out) {
+        int count = flatCandidates.length / k;
+        if (batchKernel != null && k == config.featureSize) {
+            batchKernel.testSets(flatCandidates, count, out);
+            return;
+        }
+
+        int[] candidate = new int[k];
+        for (int i = 0; i < count; ++i) {
+            System.arraycopy(flatCandidates, i * k, candidate, 0, k);
+            out[i] = testSet(candidate);
+        }
+    }
+
+    /**
+     * The scalar batch kernel.
+     */
+    private void testPackedSets(int[] flatCandidates, int count, boolean[] out) {
+        for (int i = 0, offset = 0; i < count; ++i) {
+            long any = 0, all = -1L;
+            for (int end = offset + config.featureSize; offset < end; ++offset) {
+                any |= packedCards[flatCandidates[offset]];
+                all &= packedCards[flatCandidates[offset]];
+            }
+            out[i] = isPackedSet(any, all);
+        }
+    }
+
+    /**
+     * @return - true iff batches are checked by the Vector API kernel.
+     */
+    boolean isVectorized() { // package-private for the unit tests
+        return batchKernel != null && batchKernel.getClass().getName().equals(VECTOR_KERNEL);
+    }
+
+    /**
+     * @param lanes - a value in the packed encoding.
+     * @return - the highest bit of every lane that has at least one bit set.
+     */
+    private long nonEmptyLanes(long lanes) {
+        // adding the low bits of a lane to its all-ones low mask carries into the lane's highest bit iff any is set
+        return (((lanes & laneLowBits) + laneLowBits) | lanes) & laneHighBits;
+    }
+
+    /**
+     * The per-feature implementation of testSet, used when the packed encoding is unavailable.
+     */
+    boolean testSetByFeatures(int[] cards) {
         for (int i = 0; i < config.featureCount; ++i) {
             boolean sameSame = true, butDifferent = true;
 
             // check if this features is sameSame in all cards
-            for (int j = 1; j < features.length; ++j)
-                if (features[0][i] != features[j][i]) {
+            for (int j = 1; j < cards.length; ++j)
+                if (featureTable.feature(cards[0], i) != featureTable.feature(cards[j], i)) {
                     sameSame = false;
                     break;
                 }
 
             // check if this feature is butDifferent in all cards
-            for (int j = 1; j < features.length; ++j)
-                for (int k = j; k < features.length; ++k)
-                    if (features[j - 1][i] == features[k][i]) {
+            for (int j = 1; j < cards.length && butDifferent; ++j)
+                for (int k = j; k < cards.length; ++k)
+                    if (featureTable.feature(cards[j - 1], i) == featureTable.feature(cards[k], i)) {
                         butDifferent = false;
                         break;
                     }
@@ -66,28 +240,324 @@ public class UtilImpl implements Util {
 
     @Override
     public List<int[]> findSets(List<Integer> deck, int count) {
-        LinkedList<int[]> sets = new LinkedList<>();
-        int n = deck.size();
-        int r = config.featureSize;
-        int[] combination = new int[r];
-
-        for (int i = 0; i < r; ++i)
-            combination[i] = i;
-
-        while (combination[r - 1] < deck.size()) {
-            int[] cards = Arrays.stream(combination).map(deck::get).sorted().toArray();
-            if (testSet(cards)) {
-                sets.add(cards);
-                if (sets.size() >= count) return sets;
+        if (count <= 0) return new LinkedList<>();
+        int[] cards = new int[deck.size()];
+        int index = 0;
+        for (int card : deck)
+            cards[index++] = card;
+
+        Stream<int[]> sets = streamSets(cards);
+        if (config.parallelSearchThreshold > 0 && cards.length >= config.parallelSearchThreshold)
+            sets = sets.parallel();
+        // an unlimited search keeps the lexicographic order, a limited parallel one may pick any sets
+        if (count < Integer.MAX_VALUE)
+            sets = sets.unordered().limit(count);
+        return sets.collect(Collectors.toCollection(LinkedList::new));
+    }
+
+    @Override
+    public Stream<int[]> streamSets(int[] cards) {
+        return StreamSupport.stream(new SetSpliterator(new SetCursor(cards)), false);
+    }
+
+    @Override
+    public boolean hasAnySet(int[] cards) {
+        return new SetCursor(cards).next();
+    }
+
+    @Override
+    public long countSets(int[] cards) {
+        SetCursor cursor = new SetCursor(cards);
+        long count = 0;
+        while (cursor.next())
+            ++count;
+        return count;
+    }
+
+    @Override
+    public long countSetsExact(int[] cards) {
+        if (config.featureSize != 3 || config.featureCount > MAX_TRANSFORM_FEATURES) return countSets(cards);
+
+        // the indicator of the cards as elements a + b*w of Z[w], w being a primitive cube root of unity
+        long[] a = new long[config.deckSize];
+        long[] b = new long[config.deckSize];
+        long distinct = 0;
+        for (int card : cards)
+            if (a[card] == 0) {
+                a[card] = 1;
+                ++distinct;
+            }
+
+        // S(x) = sum over cards c of w^(x.c), one feature (base 3 digit) at a time
+        for (int stride = 1; stride < config.deckSize; stride *= 3)
+            for (int block = 0; block < config.deckSize; block += 3 * stride)
+                for (int i = block; i < block + stride; ++i) {
+                    int j = i + stride, k = j + stride;
+                    long a0 = a[i], b0 = b[i], a1 = a[j], b1 = b[j], a2 = a[k], b2 = b[k];
+                    // u*w = -b + (a - b)w and u*w^2 = (b - a) - a*w for u = a + b*w
+                    a[i] = a0 + a1 + a2;
+                    b[i] = b0 + b1 + b2;
+                    a[j] = a0 - b1 + (b2 - a2);
+                    b[j] = b0 + (a1 - b1) - a2;
+                    a[k] = a0 + (b1 - a1) - b2;
+                    b[k] = b0 - a1 + (a2 - b2);
+                }
+
+        // sum of S(x)^3 over x is 3^n times the number of triples (c1, c2, c3) of cards with c1 + c2 + c3 = 0, i.e.
+        // the ordered sets plus the |S| triples of one card three times; the sum's w part cancels out
+        long sum = 0;
+        for (int x = 0; x < config.deckSize; ++x) {
+            long squareA = a[x] * a[x] - b[x] * b[x];
+            long squareB = 2 * a[x] * b[x] - b[x] * b[x];
+            sum += squareA * a[x] - squareB * b[x];
+        }
+        return (sum / config.deckSize - distinct) / 6;
+    }
+
+    /**
+     * Walks the sets of a card collection one at a time, in lexicographic order of their indices in the collection.
+     * The walk can be restricted to the sets whose first card is at an index in [from, to), which is how the
+     * spliterator splits it.
+     * <p>
+     * With at least three values per feature the cursor enumerates (featureSize - 1)-combinations and looks up the
+     * single card that completes each of them. Otherwise the last card is not uniquely determined, and it tests
+     * every featureSize-combination instead.
+     */
+    private class SetCursor {
+
+        private final int[] cards;
+
+        // the index of every card in cards (shared by split cursors)
+        private final CardPositions position;
+
+        private final boolean completing;
+        private final int[] combination;
+        private final int[] candidate;
+        private final int lastIndex;
+        private int to;
+        private boolean started;
+        private int missing;
+
+        private SetCursor(int[] cards) {
+            this(cards, new CardPositions(cards), 0, Integer.MAX_VALUE);
+        }
+
+        private SetCursor(int[] cards, CardPositions position, int from, int to) {
+            this.cards = cards;
+            this.position = position;
+            completing = config.featureSize >= 3;
+            int r = completing ? config.featureSize - 1 : config.featureSize;
+            // a completing search reserves the last index for the completion
+            lastIndex = completing ? cards.length - 2 : cards.length - 1;
+            this.to = Math.min(to, lastIndex - r + 2);
+            combination = new int[r];
+            for (int i = 0; i < r; ++i)
+                combination[i] = from + i;
+            candidate = completing ? null : new int[r];
+        }
+
+        /**
+         * Advances the cursor to the next set.
+         *
+         * @return - true iff there was another set.
+         */
+        private boolean next() {
+            while (advance()) {
+                if (completing) {
+                    missing = completeSet(cards, combination);
+                    // only accept completions that come later, so every set is found once
+                    if (missing >= 0 && position.of(missing) > combination[combination.length - 1]) return true;
+                } else {
+                    for (int i = 0; i < candidate.length; ++i)
+                        candidate[i] = cards[combination[i]];
+                    if (testSet(candidate)) return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean advance() {
+            int r = combination.length;
+            if (started) {
+                // generate next combination in lexicographic order
+                int t = r - 1;
+                while (t != 0 && combination[t] == lastIndex - r + 1 + t) --t;
+                combination[t]++;
+                for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
+            }
+            started = true;
+            return combination[0] < to;
+        }
+
+        /**
+         * @return - the cards of the set the cursor is on, sorted.
+         */
+        private int[] set() {
+            int r = combination.length;
+            int[] set = new int[config.featureSize];
+            for (int i = 0; i < r; ++i)
+                set[i] = cards[combination[i]];
+            if (completing) set[r] = missing;
+            Arrays.sort(set);
+            return set;
+        }
+
+        /**
+         * Gives up the second half of the leading indices that were not started yet.
+         *
+         * @return - a cursor over the given up indices, or null if there are too few of them.
+         */
+        private SetCursor split() {
+            int from = started ? combination[0] + 1 : combination[0];
+            if (to - from < 2) return null;
+            int middle = (from + to) >>> 1;
+            SetCursor suffix = new SetCursor(cards, position, middle, to);
+            to = middle;
+            return suffix;
+        }
+    }
+
+    /**
+     * The index of each card in an array of cards, in an open-addressing table sized to the array rather than to the
+     * deck, so that searching a board of a few cards does not allocate a map of every card in a large deck.
+     * Read-only once built, so split cursors share it across threads.
+     */
+    private static final class CardPositions {
+
+        // card + 1 per entry (0: an empty entry), and the index of that card
+        private final int[] keys;
+        private final int[] indices;
+        private final int shift;
+
+        private CardPositions(int[] cards) {
+            int bits = 32 - Integer.numberOfLeadingZeros(Math.max(2 * cards.length - 1, 1)); // at most half full
+            keys = new int[1 << bits];
+            indices = new int[1 << bits];
+            shift = 32 - bits;
+            for (int i = 0; i < cards.length; ++i) {
+                int slot = slot(cards[i]);
+                while (keys[slot] != 0 && keys[slot] != cards[i] + 1)
+                    slot = (slot + 1) & (keys.length - 1);
+                keys[slot] = cards[i] + 1;
+                indices[slot] = i; // a repeated card keeps its last index
+            }
+        }
+
+        private int slot(int card) {
+            return (card * 0x9E3779B9) >>> shift;
+        }
+
+        /**
+         * @return - the index of the card in the cards, or -1 if it is not one of them.
+         */
+        private int of(int card) {
+            for (int slot = slot(card); keys[slot] != 0; slot = (slot + 1) & (keys.length - 1))
+                if (keys[slot] == card + 1) return indices[slot];
+            return -1;
+        }
+    }
+
+    /**
+     * Streams the sets of a cursor. Splitting hands the current cursor, which covers the lower leading indices, to
+     * the new spliterator and keeps the rest, so parallel streams split the search by leading index across the
+     * fork/join pool and ordered ones keep the lexicographic order.
+     */
+    private class SetSpliterator implements Spliterator<int[]> {
+
+        private SetCursor cursor;
+
+        private SetSpliterator(SetCursor cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super int[]> action) {
+            if (!cursor.next()) return false;
+            action.accept(cursor.set());
+            return true;
+        }
+
+        @Override
+        public Spliterator<int[]> trySplit() {
+            SetCursor suffix = cursor.split();
+            if (suffix == null) return null;
+            SetSpliterator prefix = new SetSpliterator(cursor);
+            cursor = suffix;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | DISTINCT | NONNULL | IMMUTABLE;
+        }
+    }
+
+    @Override
+    public int completeSet(int[] cards) {
+        if (config.featureSize < 3) return -1; // the completion would be one of the cards themselves
+        return completeSet(cards, allCards);
+    }
+
+    /**
+     * Computes the card that completes the given featureSize - 1 cards into a legal set.
+     *
+     * @param cards       - the cards to pick from.
+     * @param combination - the indices (in cards) of the featureSize - 1 cards to complete.
+     * @return - the id of the completing card, or -1 if the given cards cannot be part of a legal set.
+     */
+    int completeSet(int[] cards, int[] combination) {
+        if (packedCards != null) return completePackedSet(cards, combination);
+
+        int r = combination.length;
+        int missing = 0;
+        int valuesSum = config.featureSize * (config.featureSize - 1) / 2;
+        for (int f = 0; f < config.featureCount; ++f) {
+            int first = featureTable.feature(cards[combination[0]], f);
+            boolean sameSame = true, butDifferent = true;
+            int sum = 0;
+            for (int i = 0; i < r; ++i) {
+                int value = featureTable.feature(cards[combination[i]], f);
+                sum += value;
+                if (value != first) sameSame = false;
+                for (int j = 0; j < i && butDifferent; ++j)
+                    if (featureTable.feature(cards[combination[j]], f) == value) butDifferent = false;
             }
 
-            // generate next combination in lexicographic order
-            int t = r - 1;
-            while (t != 0 && combination[t] == n - r + t) --t;
-            combination[t]++;
-            for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
+            if (sameSame) missing = missing * config.featureSize + first;
+            else if (butDifferent) missing = missing * config.featureSize + valuesSum - sum;
+            else return -1;
         }
-        return sets;
+        return missing;
+    }
+
+    /**
+     * The packed encoding implementation of completeSet.
+     */
+    private int completePackedSet(int[] cards, int[] combination) {
+        long any = 0, all = -1L;
+        for (int index : combination) {
+            any |= packedCards[cards[index]];
+            all &= packedCards[cards[index]];
+        }
+
+        // features shared by all cards keep their value, the others must miss exactly one value
+        long sameHigh = nonEmptyLanes(all);
+        long sameLanes = sameHigh | (sameHigh - (sameHigh >>> (config.featureSize - 1)));
+        long missingValues = ~any & laneBits & ~sameLanes;
+        // every lane of single is non-empty, so subtracting the lowest lane bits does not borrow across lanes
+        long single = missingValues | (sameLanes & laneLowestBits);
+        if ((single & (single - laneLowestBits)) != 0) return -1;
+
+        long missing = (all & sameLanes) | missingValues;
+        int card = 0;
+        for (int f = config.featureCount - 1; f >= 0; --f)
+            card = card * config.featureSize + Long.numberOfTrailingZeros(missing >>> (f * config.featureSize));
+        return card;
     }
 
     public void spin() {
@@ -0,0 +1,64 @@
+package bguspl.set.ex;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The analyses of the most recently seen boards, keyed by board hash, least recently used evicted first.
+ * A hit is returned only if the cached analysis is of the very same board, so hash collisions cost a miss and never
+ * a wrong answer.
+ */
+public class AnalysisCache {
+
+    private final Map<Long, TableAnalysis> analyses;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * @param capacity - the number of analyses to keep (0 or less: none).
+     */
+    public AnalysisCache(int capacity) {
+        analyses = new LinkedHashMap<Long, TableAnalysis>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, TableAnalysis> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @param hash       - the Zobrist hash of a board.
+     * @param slotToCard - the card in each slot of the board.
+     * @return - the cached analysis of the board, or null if there is none.
+     */
+    public synchronized TableAnalysis get(long hash, int[] slotToCard) {
+        TableAnalysis analysis = analyses.get(hash);
+        if (analysis != null && analysis.isOf(hash, slotToCard)) {
+            ++hits;
+            return analysis;
+        }
+        ++misses;
+        return null;
+    }
+
+    /**
+     * Caches an analysis, replacing any other analysis with the same hash.
+     * @param analysis - the analysis.
+     */
+    public synchronized void put(TableAnalysis analysis) {
+        analyses.put(analysis.getHash(), analysis);
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized int size() {
+        return analyses.size();
+    }
+}
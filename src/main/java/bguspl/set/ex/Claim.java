@@ -0,0 +1,118 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A player's claim that the cards under its tokens form a legal set, as the table was when it was made.
+ * Made on the player's thread and judged on the dealer's, which hands the verdict back through the claim.
+ */
+public final class Claim {
+
+    /**
+     * The dealer's ruling on a claim.
+     */
+    public enum Verdict {
+        POINT,
+        PENALTY,
+        // not judged: the claim was stale, or withdrawn when the game ended
+        STALE
+    }
+
+    private final Player player;
+
+    // the slots the player had its tokens on
+    private final int[] slots;
+
+    // the version of each slot (see Table.slotVersion) when the claim was made
+    private final long[] slotVersions;
+
+    // when the player placed its last token and when the claim was queued (System.nanoTime)
+    private final long madeAt;
+    private final long queuedAt;
+
+    // completed once, by the dealer's ruling or by a withdrawal
+    private final CompletableFuture<Verdict> verdict = new CompletableFuture<Verdict>();
+
+    /**
+     * Makes a claim of the slots a player has its tokens on.
+     * @param table  - the table.
+     * @param player - the claiming player.
+     * @param madeAt - when the player placed its last token (in System.nanoTime terms).
+     */
+    public Claim(Table table, Player player, long madeAt) {
+        this.player = player;
+        this.slots = table.copyTokens(player.getId());
+        this.slotVersions = table.slotVersions(slots);
+        this.madeAt = madeAt;
+        this.queuedAt = System.nanoTime();
+    }
+
+    public Player getPlayer() {
+        return player;
+    }
+
+    /**
+     * @return - when the player placed its last token (in System.nanoTime terms). Claims are judged in this order.
+     */
+    public long getMadeAt() {
+        return madeAt;
+    }
+
+    /**
+     * @return - when the claim was queued for the dealer (in System.nanoTime terms).
+     */
+    public long getQueuedAt() {
+        return queuedAt;
+    }
+
+    /**
+     * @return - the claimed slots (the array must not be modified).
+     */
+    public int[] getSlots() {
+        return slots;
+    }
+
+    /**
+     * Hands the verdict to the player (only the first ruling or withdrawal counts).
+     * @param ruling - the verdict.
+     */
+    public void rule(Verdict ruling) {
+        verdict.complete(ruling);
+    }
+
+    /**
+     * Gives up waiting for a ruling, e.g. when the game ends.
+     */
+    public void withdraw() {
+        verdict.complete(Verdict.STALE);
+    }
+
+    /**
+     * Blocks until the dealer rules on the claim or it is withdrawn.
+     * @return - the verdict.
+     */
+    public Verdict awaitVerdict() {
+        return verdict.join();
+    }
+
+    /**
+     * @return - the verdict, or null if there is none yet.
+     */
+    public Verdict getVerdict() {
+        return verdict.getNow(null);
+    }
+
+    /**
+     * A claim is stale if any of its slots had its card replaced or removed since it was made (typically by an
+     * earlier claim on an overlapping slot), or the player no longer has its tokens on them. The caller holds the
+     * locks of the claimed slots, so the answer holds until it releases them.
+     * @param table - the table.
+     * @return - true iff the claim still describes the table.
+     */
+    public boolean isCurrent(Table table) {
+        for (int i = 0; i < slots.length; ++i)
+            if (table.slotVersion(slots[i]) != slotVersions[i])
+                return false;
+        return table.hasTokensOn(player.getId(), slots);
+    }
+}
@@ -1,14 +1,18 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.ThreadLogger;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
-import java.util.Stack;
-import java.util.stream.Collectors;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.stream.IntStream;
 
 /**
@@ -28,9 +32,30 @@ public class Dealer implements Runnable {
     private final Player[] players;
 
     /**
-     * The list of card ids that are left in the dealer's deck.
+     * The card ids that are left in the dealer's deck.
      */
-    private final List<Integer> deck;
+    private final Deck deck;
+
+    /**
+     * The source of the dealer's random choices.
+     */
+    private final Random random;
+
+    /**
+     * The cards still in the game (in the deck or on the table) and the number of sets among them. Only kept for a
+     * featureSize of 3, where counting the sets a card is part of takes one completion per card; null otherwise.
+     */
+    private final SetTracker gameCards;
+
+    /**
+     * Without gameCards: true iff the cards still in the game hold a set, checked again after each point.
+     */
+    private volatile boolean gameHasSet;
+
+    /**
+     * The number of times guaranteed-set dealing completed a set that a random deal would have missed.
+     */
+    private int reshufflesAvoided;
 
     /**
      * True iff game should be terminated due to an external event.
@@ -41,36 +66,137 @@ public class Dealer implements Runnable {
      */
     private long countdownUntil;
 
-    private Queue<Player> pendingRequests;
+    /**
+     * The claims made by players and not judged yet, in arrival order (many players offer, the dealer polls).
+     */
+    private final Queue<Claim> pendingClaims;
 
-    private boolean shuffle;
+    /**
+     * Per player: the time from placing the last token of a claim until the dealer judged it, the part of it the claim
+     * spent queued, and the time judging it took.
+     */
+    private final LatencyHistogram[] claimLatency;
+    private final LatencyHistogram[] queueWait;
+    private final LatencyHistogram[] judgeTime;
 
     private boolean isWarningTime;
 
-    private Object threadCreationLock;
+    /**
+     * The time of the last point scored (shown as elapsed time when there is no countdown).
+     */
+    private long lastActionAt;
 
-    private Stack<Thread> allPlayerThreads;
+    /**
+     * The value the countdown display shows: hundredths of a second in the warning period, seconds otherwise
+     * (-1: refresh it).
+     */
+    private long shownCountdown = -1;
+    private boolean shownWarning;
+
+    /**
+     * Starts and stops the player threads.
+     */
+    private final PlayerLifecycle lifecycle;
+
+    /**
+     * Analyzes the table and prints the hints off the dealer thread.
+     */
+    private final HintService hintService;
+
+    private volatile ThreadLogger hintThread;
+
+    /**
+     * Runs the timed callbacks of the game: the countdown display and timeout, and the players' freezes.
+     */
+    private final TimerWheel timers;
+
+    private volatile ThreadLogger timerThread;
 
-    private HashMap<Thread,Player> threadToPlayer;
+    /**
+     * The next countdown update on the timer wheel, and the number of countdown resets (guarded by this).
+     */
+    private TimerWheel.Timer countdownTimer;
+    private long countdownGeneration;
 
     public Dealer(Env env, Table table, Player[] players) {
         this.env = env;
         this.table = table;
         this.players = players;
-        deck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
+        random = env.config.randomSeed != 0 ? new Random(env.config.randomSeed) : new Random();
+        deck = new Deck(env.config.deckSize, random);
+        int[] allCards = IntStream.range(0, env.config.deckSize).toArray();
+        if(env.config.featureSize == 3){
+            gameCards = new SetTracker(env.config, env.util);
+            gameCards.reset(allCards, env.util.countSetsExact(allCards));
+        } else {
+            gameCards = null; // an exact count costs a pass over every (featureSize - 1)-combination of the deck
+            gameHasSet = env.util.hasAnySet(allCards);
+        }
         terminate = false;
-        pendingRequests = new LinkedList<Player>();
-        shuffle = false;
+        pendingClaims = new ConcurrentLinkedQueue<Claim>();
+        claimLatency = new LatencyHistogram[players.length];
+        queueWait = new LatencyHistogram[players.length];
+        judgeTime = new LatencyHistogram[players.length];
+        for(int i=0; i<players.length; i++){
+            claimLatency[i] = new LatencyHistogram();
+            queueWait[i] = new LatencyHistogram();
+            judgeTime[i] = new LatencyHistogram();
+        }
         isWarningTime = false;
-        threadCreationLock = new Object();
+        lifecycle = new PlayerLifecycle(env, players);
+        hintService = new HintService(env, table);
+        timers = new TimerWheel(env, 10, 512);
 
     }
-    public List<Integer> getDeck(){
+    public Deck getDeck(){
         return deck;
     }
 
-    public void notifyCreationLock(){
-        synchronized (threadCreationLock){threadCreationLock.notifyAll();}
+    public int getReshufflesAvoided(){
+        return reshufflesAvoided;
+    }
+
+    /**
+     * @param player - a player id.
+     * @return - the times the player's claims waited to be judged, since they were made.
+     */
+    public LatencyHistogram getClaimLatency(int player){
+        return claimLatency[player];
+    }
+
+    /**
+     * @param player - a player id.
+     * @return - the times the player's claims waited in the dealer's queue to be judged.
+     */
+    public LatencyHistogram getQueueWait(int player){
+        return queueWait[player];
+    }
+
+    /**
+     * @param player - a player id.
+     * @return - the times judging the player's claims took.
+     */
+    public LatencyHistogram getJudgeTime(int player){
+        return judgeTime[player];
+    }
+
+    public TimerWheel getTimers(){
+        return timers;
+    }
+
+    public HintService getHintService(){
+        return hintService;
+    }
+
+    public PlayerLifecycle getLifecycle(){
+        return lifecycle;
+    }
+
+    /**
+     * Called by a player or AI thread once it is running, returns when all of them are (see PlayerLifecycle.start).
+     */
+    public void threadStarted(){
+        lifecycle.threadStarted();
     }
 
     /**
@@ -79,45 +205,52 @@ public class Dealer implements Runnable {
     @Override
     public void run() {
         System.out.printf("Info: Thread %s starting.%n", Thread.currentThread().getName());
-        allPlayerThreads = new Stack<Thread>();
-        threadToPlayer = new HashMap<Thread,Player>();
-        for(Player p : this.players){
-            Thread playerThread = new Thread(p);
-            allPlayerThreads.push(playerThread);
-            threadToPlayer.put(playerThread, p);
-            playerThread.start();
-            synchronized(threadCreationLock){try{threadCreationLock.wait();}catch(InterruptedException ig){}} //waits for thread to fully initialize
+        if(env.config.hints){ // nothing else reads the analyses
+            hintThread = new ThreadLogger(hintService, "hints", env.logger);
+            hintThread.startWithLog();
         }
+        timerThread = new ThreadLogger(timers, "timers", env.logger);
+        timerThread.startWithLog();
+        lifecycle.start(); // all the players start together
         while (!shouldFinish()) {
-            Collections.shuffle(deck);
             placeCardsOnTable();
-            for(Player p :players){ // notify all players that rearrangement is done
-                synchronized (p){p.notifyAll();}
-            }
+            hintService.boardSettled();
             countdownLoop();
-                synchronized(table){ //judges last pending requests from players before redistributing cards
-                  removeCardsFromTable();
-                  removeAllCardsFromTable();
-                }
+                //judges last pending requests from players before redistributing cards
+                removeCardsFromTable();
+                if(shouldFinish())
+                    removeAllCardsFromTable();
+                else
+                    redealOnTimeout();
                
          
         }
         terminate();
         announceWinners();
+        if(env.config.guaranteedSetDealing)
+            System.out.printf("Info: Guaranteed-set dealing avoided %d reshuffles.%n", reshufflesAvoided);
+        for(Player p : players)
+            System.out.printf("Info: Player %d made %d claims, waited %s, queued %s, judged in %s.%n", p.id,
+                    claimLatency[p.id].count(), claimLatency[p.id], queueWait[p.id], judgeTime[p.id]);
         System.out.printf("Info: Thread %s terminated.%n", Thread.currentThread().getName());
     }
 
     /**
      * The inner loop of the dealer thread that runs as long as the countdown did not time out.
+     * Each step sleeps until the next event: a claim or the timeout (the display is updated on the timer wheel).
      */
     private void countdownLoop() {
         
         resetCountdown();   
-        while (!terminate && System.currentTimeMillis() < countdownUntil) {
-            updateCountdown();
-            sleepUntilWokenOrTimeout();
+        while (!terminate && (env.config.turnTimeoutMillis <= 0 || System.currentTimeMillis() < countdownUntil)) {
+            if (table.countSets() == 0) { // no player can score on this table, redeal instead of waiting for the timeout
+                System.out.println("Info: No set on the table, redealing.");
+                return;
+            }
+            sleepUntilWoken();
             removeCardsFromTable();
             placeCardsOnTable();
+            hintService.boardSettled();
         }
     }
 
@@ -126,14 +259,28 @@ public class Dealer implements Runnable {
      */
     public void terminate() {
         System.out.println("Program terminates by order");
-        while(!allPlayerThreads.isEmpty())
-        {
-            Thread t = allPlayerThreads.pop();
-            Player p = threadToPlayer.get(t);
-            p.terminate();
-            try{t.join();} catch(InterruptedException ig){}
-        }
+        lifecycle.stop();
+        hintService.terminate();
+        ThreadLogger hints = hintThread;
+        hintThread = null;
+        if(hints != null)
+            try{hints.joinWithLog();} catch(InterruptedException ig){}
+        timers.terminate();
+        ThreadLogger wheel = timerThread;
+        timerThread = null;
+        if(wheel != null)
+            try{wheel.joinWithLog();} catch(InterruptedException ig){}
         this.terminate = true;
+        synchronized (this) {
+            notifyAll(); // wakes the dealer up if it is waiting for the next event
+        }
+    }
+
+    /**
+     * @return - true iff the cards still in the game (in the deck or on the table) hold a legal set.
+     */
+    private boolean gameHasSet() {
+        return gameCards != null ? gameCards.countSets() > 0 : gameHasSet;
     }
 
     /**
@@ -141,108 +288,357 @@ public class Dealer implements Runnable {
      * @return true iff the game should be finished.
      */
     private boolean shouldFinish() {
-        List<Integer> onTable = new LinkedList<Integer>();
-        for(int i=0; i<env.config.tableSize; i++){
-            if(table.slotToCard[i]!=null)
-              onTable.add(table.slotToCard[i]);
-        }
-        List<Integer> allCards = new LinkedList<Integer>();
-        allCards.addAll(deck);
-        allCards.addAll(onTable);
-        return terminate || env.util.findSets(allCards, 1).size() == 0;
+        return terminate || !gameHasSet();
     }
 
     /**
      * Checks if any cards should be removed from the table and returns them to the deck.
+     * Judges all the pending claims as one batch: the slots of all of them are locked once, and the claims are
+     * judged in the order their players placed their last token. A claim made stale by an earlier one (its card was taken or its tokens moved) is
+     * dropped and its player released, without a point or a penalty.
      */
     public void removeCardsFromTable() {  // MADE PUBLIC SO THAT UNIT TEST COULD ACCESS IT
-        while(!pendingRequests.isEmpty())
-        {
-            Player p;
-            synchronized(pendingRequests){
-               p = pendingRequests.remove();
-            }
-            List<Integer> tokens;
-            synchronized (table){
-            tokens = table.getTokens(p.getId());
-            int[] cards = new int[env.config.featureSize];
-            try{
-            for(int i=0; i<tokens.size(); i++){
-                cards[i] = table.slotToCard[tokens.get(i)];
-            }
-            boolean flag = env.util.testSet(cards);
-            if(flag && tokens.size() == env.config.featureSize)
-            {
-                for(int i=0; i<tokens.size(); i++){
-                    
-                      table.removeCard(tokens.get(i));
-                    
-                }
-                p.point();
-                resetCountdown();
-            }   
-            else if(tokens.size() == env.config.featureSize){
-                p.penalty();
+        List<Claim> batch = new ArrayList<Claim>();
+        for(Claim claim = pendingClaims.poll(); claim != null; claim = pendingClaims.poll())
+            batch.add(claim);
+        if(batch.isEmpty())
+            return;
+        batch.sort(Comparator.comparingLong(Claim::getMadeAt)); // the first to complete its set wins, not the first to queue
+
+        int[] slots = batch.stream().flatMapToInt(claim -> Arrays.stream(claim.getSlots())).distinct().toArray();
+        boolean scored = false;
+        table.lockSlots(slots); // only the claimed slots are held while judging
+        try{
+            for(Claim claim : batch){
+                long judgedAt = System.nanoTime();
+                scored |= judge(claim) == Claim.Verdict.POINT;
+                int id = claim.getPlayer().getId();
+                claimLatency[id].record(judgedAt - claim.getMadeAt());
+                queueWait[id].record(judgedAt - claim.getQueuedAt());
+                judgeTime[id].record(System.nanoTime() - judgedAt);
             }
-            } catch (Exception e) {synchronized(p.getRequestLock()){p.getRequestLock().notifyAll();} } // This exception occurs if someone was in queue first to claim the point of some card of some set and the second player is no longer relevant for it
+        } finally {
+            table.unlockSlots(slots);
+        }
+        if(scored && gameCards == null){
+            int[] onTable = table.cardsOnTable();
+            int[] inGame = Arrays.copyOf(onTable, onTable.length + deck.size());
+            System.arraycopy(deck.toArray(), 0, inGame, onTable.length, deck.size());
+            gameHasSet = env.util.hasAnySet(inGame);
+        }
+    }
+
+    /**
+     * Judges a claim. The caller holds the locks of its slots.
+     * @return - the verdict.
+     */
+    private Claim.Verdict judge(Claim claim) {
+        Player p = claim.getPlayer();
+        int[] tokens = claim.getSlots();
+        if(tokens.length != env.config.featureSize || !claim.isCurrent(table)){
+            claim.rule(Claim.Verdict.STALE);
+            return Claim.Verdict.STALE;
+        }
+        int[] cards = new int[env.config.featureSize];
+        for(int i=0; i<tokens.length; i++){
+            cards[i] = table.slotToCard[tokens[i]];
+        }
+        if(env.util.testSet(cards))
+        {
+            for(int i=0; i<tokens.length; i++){
+                
+                  table.removeCard(tokens[i]); // makes later claims on these slots stale
+                  if(gameCards != null)
+                     gameCards.remove(cards[i]); // the claimed cards leave the game
+                
             }
+            p.point();
+            claim.rule(Claim.Verdict.POINT);
+            resetCountdown();
+            return Claim.Verdict.POINT;
+        }   
+        else{
+            claim.rule(Claim.Verdict.PENALTY);
+            return Claim.Verdict.PENALTY;
         }
     }
 
     /**
      * Check if any cards can be removed from the deck and placed on the table.
      */
-    private void placeCardsOnTable() {
-        if(shuffle){
-            Collections.shuffle(deck);
-            shuffle = false;
-        }
+    void placeCardsOnTable() { // package-private for the unit tests
         List<Integer> freeSlots = new LinkedList<Integer>();
         for(int i=0; i<env.config.tableSize;i++){
-            if(table.slotToCard[i] == null)
+            if(table.slotToCard[i] == Table.NONE)
                freeSlots.add(i);
         }
-        Collections.shuffle(freeSlots);
-            for(Integer i: freeSlots){
-                if(!this.deck.isEmpty() && table.slotToCard[i] == null)
-                   table.placeCard(this.deck.remove(0), i);
+        if(freeSlots.isEmpty() || deck.isEmpty())
+            return;
+        Collections.shuffle(freeSlots, random);
+        int[] incoming = drawCards(freeSlots.size());
+        int next = 0;
+        for(Integer i: freeSlots){
+            if(next < incoming.length)
+               table.placeCard(incoming[next++], i);
+        }
+    }
+
+    /**
+     * Draws the cards for the free slots of the table. With guaranteed-set dealing, a random draw that would leave
+     * the table without a set is put back, and a set is completed from the table and the deck instead (the rest of
+     * the slots are still filled at random). Each such draw saves a reshuffle of the whole table.
+     * @param count - the number of free slots.
+     * @return - the cards to place, taken out of the deck.
+     */
+    private int[] drawCards(int count) {
+        int[] cards = new int[Math.min(count, deck.size())];
+        for(int i=0; i<cards.length; i++)
+            cards[i] = deck.draw();
+        if(!env.config.guaranteedSetDealing || !gameHasSet())
+            return cards;
+        int[] onTable = table.cardsOnTable();
+        int[] board = Arrays.copyOf(onTable, onTable.length + cards.length);
+        System.arraycopy(cards, 0, board, onTable.length, cards.length);
+        if(env.util.hasAnySet(board))
+            return cards;
+
+        for(int card : cards)
+            deck.add(card);
+        int[] set = findDealableSet(onTable, 1, cards.length);
+        int next = 0;
+        if(set != null){
+            boolean complete = true;
+            for(int card : set){
+                if(deck.take(card))
+                   cards[next++] = card;
+                else if(table.cardToSlot[card] == Table.NONE)
+                   complete = false; // neither on the table nor in the deck: the set was not dealt
             }
+            if(complete)
+               reshufflesAvoided++;
+        }
+        for(int i=next; i<cards.length; i++)
+            cards[i] = deck.draw();
+        return cards;
     }
 
     /**
-     * Sleep for a fixed amount of time or until the thread is awakened for some purpose.
-     * @throws InterruptedException
+     * Searches for a set made of cards on the table and between min and max cards of the deck, preferring the sets
+     * that need the fewest cards from the deck. Every candidate is featureSize - 1 cards completed by Util.completeSet.
+     * @param onTable - the cards on the table.
+     * @param min     - the least number of cards to take from the deck (at least 1, the completing card).
+     * @param max     - the number of cards that can be dealt.
+     * @return - the cards of the set (the ones from the table first), or null if there is none.
      */
-    private synchronized void sleepUntilWokenOrTimeout() {
-        if(!isWarningTime){
-        try{
-           wait(1000);
-        } catch (InterruptedException ignored){}
-       }
+    private int[] findDealableSet(int[] onTable, int min, int max) {
+        int[] tableCards = onTable.clone();
+        int[] deckCards = deck.toArray();
+        shuffle(tableCards);
+        shuffle(deckCards); // the guaranteed set should not always be the same one
+        int[] chosen = new int[env.config.featureSize - 1];
+        for(int fromDeck = min; fromDeck <= Math.min(max, env.config.featureSize); fromDeck++){
+            int fromTable = env.config.featureSize - fromDeck;
+            if(fromTable > tableCards.length || fromDeck > deckCards.length)
+                continue;
+            int card = searchSet(chosen, 0, tableCards, 0, fromTable, deckCards, 0);
+            if(card != Table.NONE){
+                int[] set = Arrays.copyOf(chosen, chosen.length + 1);
+                set[chosen.length] = card;
+                return set;
+            }
+        }
+        return null;
     }
 
     /**
-     * Update the countdown display.
+     * Fills chosen from index with tableLeft more table cards and then deck cards (combinations in array order),
+     * until the chosen cards are completed by a card in the deck that is not one of them.
+     * @return - the completing card, or Table.NONE if no combination is completed from the deck.
      */
-    private void updateCountdown() {
-        int milis = (int)(countdownUntil - System.currentTimeMillis());
-        if (milis > env.config.turnTimeoutWarningMillis)
-           isWarningTime = false;
-        else
-           isWarningTime = true;
+    private int searchSet(int[] chosen, int index, int[] tableCards, int tableFrom, int tableLeft, int[] deckCards, int deckFrom) {
+        if(index == chosen.length){
+            int card = env.util.completeSet(chosen);
+            if(card < 0 || !deck.contains(card))
+                return Table.NONE;
+            for(int c : chosen)
+                if(c == card)
+                    return Table.NONE; // the completion must be a card of its own
+            return card;
+        }
+        if(tableLeft > 0){
+            for(int i=tableFrom; i <= tableCards.length - tableLeft; i++){
+                chosen[index] = tableCards[i];
+                int card = searchSet(chosen, index + 1, tableCards, i + 1, tableLeft - 1, deckCards, deckFrom);
+                if(card != Table.NONE)
+                    return card;
+            }
+            return Table.NONE;
+        }
+        for(int i=deckFrom; i <= deckCards.length - (chosen.length - index); i++){
+            chosen[index] = deckCards[i];
+            int card = searchSet(chosen, index + 1, tableCards, tableFrom, 0, deckCards, i + 1);
+            if(card != Table.NONE)
+                return card;
+        }
+        return Table.NONE;
+    }
+
+    private void shuffle(int[] cards) {
+        for(int i=cards.length - 1; i > 0; i--){
+            int j = random.nextInt(i + 1);
+            int card = cards[i];
+            cards[i] = cards[j];
+            cards[j] = card;
+        }
+    }
+
+    /**
+     * Sleep until the thread is awakened for some purpose (a claim, the countdown timing out or termination).
+     */
+    private synchronized void sleepUntilWoken() {
+        boolean timedOut = env.config.turnTimeoutMillis > 0 && System.currentTimeMillis() >= countdownUntil;
+        if (!timedOut && pendingClaims.isEmpty() && !terminate) {
+            try{
+               wait();
+            } catch (InterruptedException ignored){}
+        }
+    }
 
-        env.ui.setCountdown(milis, isWarningTime);
+    /**
+     * Updates the countdown display and schedules the next update on the timer wheel. Wakes the dealer up when the
+     * countdown times out, which ends the updates until the next reset.
+     * @param generation - the reset the update belongs to (an update of an earlier one does nothing).
+     */
+    private synchronized void countdownTick(long generation) {
+        if (generation != countdownGeneration)
+            return;
+        long next = updateCountdown();
+        if (env.config.turnTimeoutMillis > 0 && System.currentTimeMillis() >= countdownUntil) {
+            notifyAll();
+            return;
+        }
+        if (next != Long.MAX_VALUE)
+            countdownTimer = timers.schedule(next - System.currentTimeMillis(), () -> countdownTick(generation));
+    }
+
+    /**
+     * Update the countdown display if the value it shows changed.
+     * @return - the time of the next update (in System.currentTimeMillis terms): when the shown value changes next,
+     *           but no sooner than the next frame (see Config.countdownFrameRate) nor later than the timeout.
+     */
+    private long updateCountdown() {
+        long now = System.currentTimeMillis();
+        long nextFrame = now + 1000 / Math.max(env.config.countdownFrameRate, 1);
+        if (env.config.turnTimeoutMillis > 0) {
+            long remaining = Math.max(countdownUntil - now, 0);
+            isWarningTime = remaining <= env.config.turnTimeoutWarningMillis;
+            long unit = isWarningTime ? 10 : 1000;
+            long shown = remaining / unit;
+            if (shown != shownCountdown || isWarningTime != shownWarning) {
+                env.ui.setCountdown(remaining, isWarningTime);
+                shownCountdown = shown;
+                shownWarning = isWarningTime;
+            }
+            long nextChange = now + remaining - shown * unit + 1;
+            if (!isWarningTime)
+                nextChange = Math.min(nextChange, countdownUntil - env.config.turnTimeoutWarningMillis);
+            return Math.min(Math.max(nextChange, nextFrame), countdownUntil);
+        }
+        if (env.config.turnTimeoutMillis == 0) {
+            long shown = (now - lastActionAt) / 1000;
+            if (shown != shownCountdown) {
+                env.ui.setElapsed(now - lastActionAt);
+                shownCountdown = shown;
+            }
+            return Math.max(lastActionAt + (shown + 1) * 1000, nextFrame);
+        }
+        return Long.MAX_VALUE; // nothing to show
     }     
 
     /**
      * Reset the countdown timer and update the countdown display.
      */
-    private void resetCountdown() {
+    private synchronized void resetCountdown() {
+        lastActionAt = System.currentTimeMillis();
+        shownCountdown = -1;
         if (env.config.turnTimeoutMillis > 0) {
-            countdownUntil = System.currentTimeMillis() + env.config.turnTimeoutMillis;
-            shuffle = true;
-            updateCountdown();
+            countdownUntil = lastActionAt + env.config.turnTimeoutMillis;
+        }
+        if (countdownTimer != null)
+            countdownTimer.cancel();
+        countdownTick(++countdownGeneration);
+    }
+
+    /**
+     * Replaces some of the cards on the table after the countdown, as many as Config.timeoutRedealFraction says.
+     * With a fraction of 0 only the cards that make room for a set are replaced, and the set's cards from the deck go
+     * to the empty slots first. The tokens on the kept slots stay.
+     */
+    void redealOnTimeout() { // package-private for the unit tests
+        double fraction = env.config.timeoutRedealFraction;
+        if(fraction >= 1){
+            removeAllCardsFromTable();
+            return;
+        }
+        List<Integer> filledSlots = new ArrayList<Integer>();
+        for(int i=0; i<env.config.tableSize;i++){
+            if(table.slotToCard[i] != Table.NONE)
+               filledSlots.add(i);
+        }
+        Collections.shuffle(filledSlots, random);
+        if(fraction > 0){
+            int count = Math.max(1, (int) Math.ceil(fraction * filledSlots.size()));
+            for(Integer i : filledSlots.subList(0, Math.min(count, filledSlots.size())))
+                returnCard(i);
+            return; // placeCardsOnTable fills the slots
+        }
+
+        int[] onTable = table.cardsOnTable();
+        int[] set = findDealableSet(onTable, 1, env.config.tableSize);
+        if(set == null){
+            removeAllCardsFromTable();
+            return;
         }
+        List<Integer> setCards = new ArrayList<Integer>();
+        for(int card : set)
+            setCards.add(card);
+        List<Integer> emptySlots = new ArrayList<Integer>();
+        for(int i=0; i<env.config.tableSize;i++){
+            if(table.slotToCard[i] == Table.NONE)
+               emptySlots.add(i);
+        }
+        Iterator<Integer> swappable = filledSlots.iterator();
+        while(!setCards.isEmpty()){
+            int incoming = setCards.remove(setCards.size() - 1); // the cards from the deck are last
+            if(!deck.take(incoming))
+                break; // the rest of the set is on the table
+            if(!emptySlots.isEmpty()){ // an empty slot first, so fewer cards and tokens are replaced
+                table.placeCard(incoming, emptySlots.remove(emptySlots.size() - 1));
+                continue;
+            }
+            int slot = Table.NONE;
+            while(slot == Table.NONE && swappable.hasNext()){
+                int i = swappable.next();
+                if(!setCards.contains(table.slotToCard[i]))
+                    slot = i;
+            }
+            if(slot == Table.NONE){ // cannot happen with at least featureSize slots
+                deck.add(incoming);
+                break;
+            }
+            returnCard(slot);
+            table.placeCard(incoming, slot);
+        }
+    }
+
+    /**
+     * Removes a card from the table and returns it to the deck.
+     */
+    private void returnCard(int slot) {
+        int card = table.slotToCard[slot];
+        table.removeCard(slot);
+        if(card != Table.NONE)
+            deck.add(card);
     }
 
     /**
@@ -251,17 +647,12 @@ public class Dealer implements Runnable {
     private void removeAllCardsFromTable() {
         List<Integer> freeSlots = new LinkedList<Integer>();
         for(int i=0; i<env.config.tableSize;i++){
-            if(table.slotToCard[i] != null)
+            if(table.slotToCard[i] != Table.NONE)
                freeSlots.add(i);
         }
-        Collections.shuffle(freeSlots);
+        Collections.shuffle(freeSlots, random);
         for(Integer i : freeSlots)
-        {
-            Integer card = table.slotToCard[i];
-            table.removeCard(i);
-            if(card != null)
-            this.deck.add(card);
-        }
+            returnCard(i);
     }
 
     /**
@@ -291,12 +682,26 @@ public class Dealer implements Runnable {
         
     }
 
-    public synchronized void appendRequest(Player p) {
-        synchronized (this.pendingRequests) {
-           this.pendingRequests.add(p);
-           this.pendingRequests.notify();
+    /**
+     * Queues a claim stamped now (see appendRequest(Player, long)).
+     */
+    public Claim appendRequest(Player p) {
+        return appendRequest(p, System.nanoTime());
+    }
+
+    /**
+     * Queues a claim of the slots the player has its tokens on and wakes the dealer up.
+     * @param p      - the claiming player.
+     * @param madeAt - when the player placed its last token (in System.nanoTime terms).
+     * @return - the claim, to wait for its verdict.
+     */
+    public Claim appendRequest(Player p, long madeAt) {
+        Claim claim = new Claim(table, p, madeAt);
+        pendingClaims.offer(claim);
+        synchronized (this) {
+            this.notify();
         }
-        this.notify();
+        return claim;
     }
     public int[] getWinning(){ //used for tests only
         int maxScore = 0;
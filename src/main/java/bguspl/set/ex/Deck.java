@@ -0,0 +1,96 @@
+package bguspl.set.ex;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The cards in the dealer's deck, in no particular order. Each draw picks a uniformly random card and moves it to
+ * the end of the array (one step of Fisher-Yates), so only the cards actually drawn are shuffled, and no card is
+ * boxed or shifted.
+ */
+public class Deck {
+
+    // the cards in the deck, in the first size entries
+    private final int[] cards;
+    private int size;
+
+    // the index of each card in cards, -1 if the card is not in the deck
+    private final int[] position;
+
+    private final Random random;
+
+    /**
+     * Creates a full deck.
+     * @param deckSize - the number of cards in the game.
+     * @param random   - the source of randomness for draws (seeded for reproducible games).
+     */
+    public Deck(int deckSize, Random random) {
+        this.random = random;
+        cards = new int[deckSize];
+        position = new int[deckSize];
+        for (int card = 0; card < deckSize; ++card) {
+            cards[card] = card;
+            position[card] = card;
+        }
+        size = deckSize;
+    }
+
+    /**
+     * Draws a uniformly random card.
+     * @return - the card id.
+     * @pre - the deck is not empty.
+     */
+    public int draw() {
+        int card = cards[random.nextInt(size)];
+        take(card);
+        return card;
+    }
+
+    /**
+     * Takes a given card out of the deck.
+     * @param card - the card id.
+     * @return - true iff the card was in the deck.
+     */
+    public boolean take(int card) {
+        int index = position[card];
+        if (index < 0) return false;
+        int last = cards[--size];
+        cards[index] = last;
+        position[last] = index;
+        cards[size] = card;
+        position[card] = -1;
+        return true;
+    }
+
+    /**
+     * Returns a card to the deck.
+     * @param card - a card id that is not in the deck.
+     */
+    public void add(int card) {
+        position[card] = size;
+        cards[size++] = card;
+    }
+
+    /**
+     * @param card - a card id.
+     * @return - true iff the card is in the deck.
+     */
+    public boolean contains(int card) {
+        return position[card] >= 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return - the cards in the deck.
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(cards, size);
+    }
+}
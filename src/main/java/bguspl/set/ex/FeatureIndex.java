@@ -0,0 +1,136 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+import bguspl.set.FeatureTable;
+
+/**
+ * An inverted index of the cards on the table: a bitset of card ids per feature value, so that queries such as
+ * "cards whose feature 0 is 2 and whose feature 1 is not 0" are a few word-wide bit operations.
+ * <p>
+ * A query is a bitset obtained from all() or with(), narrowed by and() / andNot() and read by cards() or count().
+ * Feature indices are in the order of Util.cardToFeatures.
+ * <p>
+ * Thread safe: every method that reads or writes the bitsets synchronizes on the index, and queries are copies.
+ */
+public class FeatureIndex {
+
+    private final int featureCount;
+    private final int featureSize;
+
+    // the feature values of every card
+    private final FeatureTable features;
+
+    // the number of longs in a bitset of card ids
+    private final int words;
+
+    // the cards on the table
+    private final long[] present;
+
+    // the cards on the table whose feature f has value v are in bitset f * featureSize + v
+    private final long[][] byValue;
+
+    public FeatureIndex(Env env) {
+        featureCount = env.config.featureCount;
+        featureSize = env.config.featureSize;
+        features = env.util.featureTable();
+        words = (env.config.deckSize + Long.SIZE - 1) / Long.SIZE;
+        present = new long[words];
+        byValue = new long[featureCount * featureSize][words];
+    }
+
+    /**
+     * Adds a card that was placed on the table.
+     * @param card - the card id.
+     */
+    public synchronized void add(int card) {
+        present[card / Long.SIZE] |= 1L << card;
+        for (int f = 0; f < featureCount; ++f)
+            byValue[f * featureSize + features.feature(card, f)][card / Long.SIZE] |= 1L << card;
+    }
+
+    /**
+     * Removes a card that was taken off the table.
+     * @param card - the card id.
+     */
+    public synchronized void remove(int card) {
+        present[card / Long.SIZE] &= ~(1L << card);
+        for (int f = 0; f < featureCount; ++f)
+            byValue[f * featureSize + features.feature(card, f)][card / Long.SIZE] &= ~(1L << card);
+    }
+
+    /**
+     * @param card - the card id.
+     * @return - true iff the card is on the table.
+     */
+    public synchronized boolean contains(int card) {
+        return (present[card / Long.SIZE] & (1L << card)) != 0;
+    }
+
+    /**
+     * @return - a new query matching all the cards on the table.
+     */
+    public synchronized long[] all() {
+        return present.clone();
+    }
+
+    /**
+     * @param feature - the feature index.
+     * @param value   - the feature value.
+     * @return - a new query matching the cards on the table with the given feature value.
+     */
+    public synchronized long[] with(int feature, int value) {
+        return byValue[feature * featureSize + value].clone();
+    }
+
+    /**
+     * Narrows a query to the cards with the given feature value.
+     * @param query   - the query to narrow.
+     * @param feature - the feature index.
+     * @param value   - the feature value.
+     * @return - the query.
+     */
+    public synchronized long[] and(long[] query, int feature, int value) {
+        long[] matching = byValue[feature * featureSize + value];
+        for (int i = 0; i < words; ++i)
+            query[i] &= matching[i];
+        return query;
+    }
+
+    /**
+     * Narrows a query to the cards without the given feature value.
+     * @param query   - the query to narrow.
+     * @param feature - the feature index.
+     * @param value   - the feature value.
+     * @return - the query.
+     */
+    public synchronized long[] andNot(long[] query, int feature, int value) {
+        long[] matching = byValue[feature * featureSize + value];
+        for (int i = 0; i < words; ++i)
+            query[i] &= ~matching[i];
+        return query;
+    }
+
+    /**
+     * @param query - a query.
+     * @return - the number of cards matching it.
+     */
+    public int count(long[] query) {
+        int count = 0;
+        for (long word : query)
+            count += Long.bitCount(word);
+        return count;
+    }
+
+    /**
+     * @param query - a query.
+     * @return - the ids of the cards matching it, in ascending order.
+     */
+    public int[] cards(long[] query) {
+        int[] cards = new int[count(query)];
+        int index = 0;
+        for (int i = 0; i < words; ++i)
+            for (long word = query[i]; word != 0; word &= word - 1)
+                cards[index++] = i * Long.SIZE + Long.numberOfTrailingZeros(word);
+        return cards;
+    }
+}
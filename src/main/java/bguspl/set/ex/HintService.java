@@ -0,0 +1,105 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+/**
+ * Analyzes the table in the background after every change to it, so that the sets on the table are available at
+ * once, and prints the hints (if enabled) on its own thread. An analysis that is overtaken by another change to the
+ * table is cancelled and never published. The hints are printed only for a board the dealer is done changing (see
+ * boardSettled), and once per board.
+ */
+public class HintService implements Runnable {
+
+    private final Env env;
+    private final Table table;
+
+    // the latest complete analysis of the table
+    private volatile TableAnalysis latest;
+
+    // true iff the table changed since the analysis in progress (or the last one) started
+    private boolean changed = true;
+
+    // true iff the dealer finished changing the table since the analysis in progress (or the last one) started
+    private boolean settled;
+
+    // the hash of the last board whose hints were printed
+    private long printedHash;
+    private boolean printed;
+
+    // true while the service's thread runs (only started by the dealer with hints on)
+    private volatile boolean running;
+
+    private volatile boolean terminate;
+
+    public HintService(Env env, Table table) {
+        this.env = env;
+        this.table = table;
+    }
+
+    @Override
+    public void run() {
+        System.out.printf("Info: Thread %s starting.%n", Thread.currentThread().getName());
+        running = true;
+        table.setBoardListener(this::boardChanged);
+        while (!terminate) {
+            boolean print;
+            synchronized (this) {
+                while (!changed && !settled && !terminate)
+                    try { wait(); } catch (InterruptedException ignored) {}
+                print = settled;
+                changed = settled = false;
+            }
+            if (terminate) break;
+
+            long version = table.version();
+            TableAnalysis analysis = latest;
+            if (analysis == null || analysis.getHash() != table.boardHash()) {
+                analysis = table.analyze(() -> terminate || table.version() != version);
+                if (analysis == null || table.version() != version)
+                    continue; // the table changed meanwhile, and changed is set again
+                latest = analysis;
+            }
+            if (print && env.config.hints && !(printed && analysis.getHash() == printedHash)) {
+                System.out.print(analysis.getHints());
+                printedHash = analysis.getHash();
+                printed = true;
+            }
+        }
+        table.setBoardListener(null);
+        running = false;
+        System.out.printf("Info: Thread %s terminated.%n", Thread.currentThread().getName());
+    }
+
+    /**
+     * Called by the table after each change to it.
+     */
+    public synchronized void boardChanged() {
+        changed = true;
+        notifyAll();
+    }
+
+    /**
+     * Called by the dealer when it is done dealing or removing cards, so that the hints of the board are printed.
+     */
+    public synchronized void boardSettled() {
+        settled = true;
+        notifyAll();
+    }
+
+    /**
+     * @return - the latest analysis of the table. While the service runs it may lag the table by the analysis in
+     *           progress (compare its hash with Table.boardHash to tell). Otherwise, e.g. with hints off, the table is
+     *           analyzed on the caller's thread when it changed since the last call.
+     */
+    public TableAnalysis getLatest() {
+        TableAnalysis analysis = latest;
+        if (analysis == null || !running && analysis.getHash() != table.boardHash())
+            latest = analysis = table.analyze(); // cached by the table for boards that recur
+        return analysis;
+    }
+
+    public synchronized void terminate() {
+        terminate = true;
+        notifyAll();
+    }
+}
@@ -0,0 +1,64 @@
+package bguspl.set.ex;
+
+/**
+ * Counts durations in power-of-two buckets of nanoseconds: bucket b holds the durations in [2^(b-1), 2^b), and
+ * bucket 0 the durations under a nanosecond. Recording is O(1) and the memory fixed, at the price of reporting
+ * percentiles as the upper bound of their bucket (within a factor of 2).
+ */
+public class LatencyHistogram {
+
+    private final long[] buckets = new long[Long.SIZE];
+
+    private long count;
+    private long total;
+    private long max;
+
+    /**
+     * Records a duration.
+     * @param nanos - the duration in nanoseconds (negative durations count as 0).
+     */
+    public synchronized void record(long nanos) {
+        nanos = Math.max(nanos, 0);
+        ++buckets[Long.SIZE - Long.numberOfLeadingZeros(nanos)];
+        ++count;
+        total += nanos;
+        max = Math.max(max, nanos);
+    }
+
+    public synchronized long count() {
+        return count;
+    }
+
+    /**
+     * @return - the mean duration in nanoseconds (0 if there are none).
+     */
+    public synchronized long mean() {
+        return count == 0 ? 0 : total / count;
+    }
+
+    public synchronized long max() {
+        return max;
+    }
+
+    /**
+     * @param fraction - the fraction of the durations (between 0 and 1), e.g. 0.99 for the 99th percentile.
+     * @return - a duration in nanoseconds at least as long as that fraction of the durations, at most twice the
+     *           actual percentile (0 if there are none).
+     */
+    public synchronized long percentile(double fraction) {
+        long rank = (long) Math.ceil(fraction * count);
+        long seen = 0;
+        for (int b = 0; b < buckets.length; ++b) {
+            seen += buckets[b];
+            if (seen >= rank && seen > 0)
+                return Math.min(b == 0 ? 0 : (1L << b) - 1, max);
+        }
+        return 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("mean %.3f ms, p50 %.3f ms, p99 %.3f ms, max %.3f ms", mean() / 1e6,
+                percentile(0.5) / 1e6, percentile(0.99) / 1e6, max / 1e6);
+    }
+}
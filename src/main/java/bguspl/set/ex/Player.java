@@ -39,16 +39,18 @@ public class Player implements Runnable {
 
     // Que of pending actions
     private Queue<Integer> actionOnSlot;
-    // Is player penalized by dealer
-    private boolean isPenalized;
-    // Is player credited by dealer
-    private boolean isCredited;
     // Did the player change tokens placement since last time he requested dealer's check?
     private boolean hadMovedSinceRequest;
+    // When the player placed its last token (System.nanoTime)
+    private long completedAt;
+    // When the current freeze ends (System.currentTimeMillis)
+    private volatile long frozenUntil;
+    // True iff the player waits for a key press from its AI thread (guarded by this)
+    private boolean wantsInput;
+    // The claim the player waits for a verdict on
+    private volatile Claim pendingClaim;
     // The dealer
     private Dealer dealer;
-    //locks progression of thread until dealer finishes judging its tokens
-    private Object requestLock;
 
 
     /**
@@ -69,10 +71,7 @@ public class Player implements Runnable {
         terminate = false;
 
         this.actionOnSlot = new LinkedList<Integer>();
-        isCredited = false;
-        isPenalized = false;
         hadMovedSinceRequest = true;
-        requestLock = new Object();
     }
 
     /**
@@ -84,56 +83,59 @@ public class Player implements Runnable {
         playerThread.setName("Player"+id);
         System.out.printf("Info: Thread %s starting.%n", Thread.currentThread().getName());
         if (!human) createArtificialIntelligence();
-        dealer.notifyCreationLock(); // notifies dealer that this object is created succesfully
+        dealer.threadStarted(); // the dealer waits for all the players to start
         
         while (!terminate) {
             
-            if(isPenalized){
-                this.applyPenalty();
-            }
-            if(isCredited){
-                this.applyPoint();
-            }
             performAction();
             if(table.allTokensPlaced(id) && hadMovedSinceRequest){ // if all tokens are placed, request dealer to check.
-                dealer.appendRequest(this);
                 hadMovedSinceRequest = false;
+                Claim claim = dealer.appendRequest(this, completedAt);
+                pendingClaim = claim;
+                if(terminate) // terminate may have missed the claim, and nobody would withdraw it
+                    claim.withdraw();
+                switch(claim.awaitVerdict()){ // blocks until the dealer rules
+                    case POINT: applyPoint(); break;
+                    case PENALTY: applyPenalty(); break;
+                    default: break; // stale or withdrawn: nothing to apply
+                }
+                pendingClaim = null;
              }
-             if(!hadMovedSinceRequest){
-                synchronized(requestLock){ try{requestLock.wait(3);} catch(InterruptedException ignore){}} //Waits for dealer to finish making the decision. 3 miliseconds maximum - in case player have missed the notification from the dealer.
-            }
         }
         if (!human) try { aiThread.join(); } catch (InterruptedException ignored) {}
-       // synchronized(requestLock){try{requestLock.wait(id);} catch(InterruptedException ig){}}
         System.out.printf("Info: Thread %s terminated.%n", Thread.currentThread().getName());
-        dealer.notifyCreationLock();
     }
 
     /**
      * Creates an additional thread for an AI (computer) player. The main loop of this thread repeatedly generates
-     * key presses. If the queue of key presses is full, the thread waits until it is not full.
+     * key presses, one each time the player asks for input (see performAction), and none during a freeze.
      */
     private void createArtificialIntelligence() {
         // note: this is a very very smart AI (!)
         aiThread = new Thread(() -> {
             System.out.printf("Info: Thread %s starting.%n", Thread.currentThread().getName());
-            synchronized(this) {notifyAll(); }
+            dealer.threadStarted();
             while (!terminate) {
              
                 try {
-                    int slot = 0;
-                    synchronized(table){
-                    if(table.allTokensPlaced(id)){
-                    try{
-                        slot = table.getTokens(id).get((int)(Math.random()*env.config.featureSize)); // chooses random token from tokens on table
-                    } catch (Exception e) { slot = (int)(Math.random()*env.config.tableSize);}
+                    int slot;
+                    int[] tokens = table.copyTokens(id);
+                    if(tokens.length == env.config.featureSize){
+                    slot = tokens[(int)(Math.random()*tokens.length)]; // chooses random token from tokens on table
                     } else{
                     slot = (int)(Math.random()*env.config.tableSize); // chooses random slot on table
                     }
-                }
                     
                     keyPressed(slot);
-                    synchronized (this) {wait(4);} //Waits for a key press to be requested again. This 4 milisecond wait is in case the thread missed the notify from the the performAction()
+                    synchronized (this) {
+                        while(!terminate){
+                            long frozen = frozenUntil - System.currentTimeMillis();
+                            if(wantsInput && frozen <= 0)
+                                break;
+                            wait(wantsInput ? frozen : 0); // the player asks for input, a freeze ends by the clock
+                        }
+                        wantsInput = false;
+                    }
                 } catch (InterruptedException ignored) {} 
             }
             keyPressed(-1);
@@ -141,7 +143,6 @@ public class Player implements Runnable {
         }, "computer-" + id);
         aiThread.setName("AI"+this.getId());
         aiThread.start();
-        synchronized(this) {try{wait();} catch(InterruptedException ig){}}
     }
 
     /**
@@ -149,8 +150,13 @@ public class Player implements Runnable {
      */
     public void terminate() {
         terminate = true;
+        Claim claim = pendingClaim;
+        if(claim != null)
+           claim.withdraw(); // the dealer may not rule anymore
         if(human)
            keyPressed(-1); // to avoid waiting for input
+        else
+           synchronized (this){ notifyAll(); } // the AI thread then ends and unblocks the player with its last key
     }
 
     public void performAction(){
@@ -158,16 +164,16 @@ public class Player implements Runnable {
         synchronized (actionOnSlot){
            while (actionOnSlot.isEmpty() && !terminate){
             if(!human){
-              synchronized (this){ this.notifyAll();}
+              synchronized (this){ wantsInput = true; this.notifyAll();}
             }
             try{actionOnSlot.wait();} catch(InterruptedException ignore){ System.out.println(" thread of player interrupted - "+this.id);} 
-            synchronized(table){
             if((table.allTokensPlaced(id)) && actionOnSlot.peek() != null && !table.hasTokenOn(id, actionOnSlot.peek())){ //invalid move
                actionOnSlot.remove();
             }
-        }
         
            }
+            if(actionOnSlot.isEmpty())
+               return; // terminated
             slot = actionOnSlot.remove();
         }
             if(table.hasTokenOn(id, slot)){
@@ -175,8 +181,10 @@ public class Player implements Runnable {
                    hadMovedSinceRequest = true;
             }
             else {
-               if(table.placeToken(id, slot))
+               if(table.placeToken(id, slot)){
+                  completedAt = System.nanoTime(); // the claim is as old as its last token
                   hadMovedSinceRequest = true;
+               }
             }
        
     }
@@ -187,6 +195,8 @@ public class Player implements Runnable {
      * @param slot - the slot corresponding to the key pressed.
      */
     public void keyPressed(int slot) { //IMPLEMENTED
+        if(slot >= 0 && isFrozen())
+            return; // input is ignored during a freeze
         synchronized (actionOnSlot){
         if(actionOnSlot.size() < env.config.featureSize)
            actionOnSlot.add(slot);
@@ -207,54 +217,56 @@ public class Player implements Runnable {
      */
     public void point() {
         score++;
-        isCredited = true;
-        synchronized (requestLock){requestLock.notifyAll();}
         int ignored = table.countCards(); // this part is just for demonstration in the unit tests
         env.ui.setScore(id, score);
     }
+
+    /**
+     * Freezes the player after the dealer ruled a point on its claim (called on the player's thread).
+     */
     public void applyPoint(){
-        isCredited = false;
-                try{
-                    int freezeTime = (int)(env.config.pointFreezeMillis);
-                    env.ui.setFreeze(id, freezeTime);
-                    while(freezeTime>=1000){
-                      env.ui.setFreeze(id, freezeTime);
-                      Thread.sleep(1000);
-                      freezeTime -=1000;
-                    }
-                    Thread.sleep(freezeTime);
-                    synchronized (actionOnSlot){this.actionOnSlot.clear();}
-                    env.ui.setFreeze(id, 0);
-                    int ignored = table.countCards(); // this part is just for demonstration in the unit tests
-                    }catch (InterruptedException ignore){}
+        freeze(env.config.pointFreezeMillis);
     }
 
     /**
-     * Penalize a player and perform other related actions.
+     * Penalize a player: freezes it after the dealer ruled a penalty on its claim (called on the player's thread).
      */
-    public void penalty() {
-       isPenalized = true;
-       synchronized (requestLock){requestLock.notifyAll();}
-    }
     public void applyPenalty(){
-        isPenalized = false;
-                try{
-                    int freezeTime = (int)(env.config.penaltyFreezeMillis);
-                    env.ui.setFreeze(id, freezeTime);
-                    while(freezeTime>=1000){
-                      env.ui.setFreeze(id, freezeTime);
-                      Thread.sleep(1000);
-                      freezeTime -= 1000;
-                    }
-                    Thread.sleep(freezeTime);
-                    synchronized (actionOnSlot){this.actionOnSlot.clear();}
-                    env.ui.setFreeze(id, 0);
-                    }catch (InterruptedException ignore){}
+        freeze(env.config.penaltyFreezeMillis);
+    }
 
+    /**
+     * Freezes the player: its key presses are dropped until the freeze ends. The thread is not blocked, the freeze
+     * display is counted down by the dealer's timer wheel.
+     * @param millis - the length of the freeze.
+     */
+    private void freeze(long millis) {
+        synchronized (actionOnSlot){
+            actionOnSlot.clear();
+            frozenUntil = System.currentTimeMillis() + millis;
+        }
+        env.ui.setFreeze(id, millis);
+        if(millis > 0)
+            dealer.getTimers().schedule(millis % 1000 == 0 ? 1000 : millis % 1000, this::freezeTick);
     }
-    public Object getRequestLock(){
-        return requestLock;
+
+    /**
+     * Updates the freeze display once a second, and clears it when the freeze ends.
+     */
+    private void freezeTick() {
+        long remaining = frozenUntil - System.currentTimeMillis();
+        if(remaining <= 0){
+            env.ui.setFreeze(id, 0);
+            return;
+        }
+        env.ui.setFreeze(id, (remaining + 999) / 1000 * 1000); // whole seconds, the tick may run a little late
+        dealer.getTimers().schedule(remaining % 1000 == 0 ? 1000 : remaining % 1000, this::freezeTick);
     }
+
+    public boolean isFrozen(){
+        return System.currentTimeMillis() < frozenUntil;
+    }
+
     public int getScore() {
         return score;
     }
@@ -266,14 +278,6 @@ public class Player implements Runnable {
         return human;
     }
 
-    public boolean isPenalized(){
-        return isPenalized;
-    }
-
-    public boolean isCredited(){
-        return isCredited;
-    }
-
   /*   public int[] getTokensPlacement(){
         return this.tokensPlacement;
     }*/
@@ -0,0 +1,173 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts and stops the player threads (and through them the AI threads) of a game.
+ * All threads are started at once and counted down on one latch, so startup takes one round of scheduling rather
+ * than a handshake per player, and a thread that never reports only costs the startup timeout. The threads that
+ * started wait at a gate until the last one did, so they do not compete for the CPU with the ones still starting.
+ * Shutdown signals all the players first and then joins them against one deadline, interrupting the ones still
+ * running when it passes. The time of each phase is kept (see getStartupTimings and getShutdownTimings).
+ */
+public class PlayerLifecycle {
+
+    private final Env env;
+    private final Player[] players;
+
+    private final List<Thread> threads = new ArrayList<Thread>();
+
+    // counts down once per player thread and once per AI thread
+    private volatile CountDownLatch started = new CountDownLatch(0);
+
+    // opened once all the threads started (or the startup timeout passed)
+    private final CountDownLatch gate = new CountDownLatch(1);
+
+    // true while start waits for the threads, the only time threadStarted counts
+    private volatile boolean starting;
+
+    private boolean startCalled;
+    private boolean stopped;
+
+    private final Map<String, Long> startupTimings = new LinkedHashMap<String, Long>();
+    private final Map<String, Long> shutdownTimings = new LinkedHashMap<String, Long>();
+
+    /**
+     * @param env     - the game environment object.
+     * @param players - the players (may be filled in later, until start is called).
+     */
+    public PlayerLifecycle(Env env, Player[] players) {
+        this.env = env;
+        this.players = players;
+    }
+
+    /**
+     * Starts the player threads and waits until every player and AI thread is running, or the startup timeout
+     * (see Config.startupTimeoutMillis) passes. Only the first call does anything, and none after stop.
+     * @return - true iff all the threads started in time (false for a repeated call or one after stop).
+     */
+    public synchronized boolean start() {
+        if (startCalled || stopped) {
+            env.logger.warning("the players were already started or stopped");
+            return false;
+        }
+        startCalled = true;
+        long begin = System.nanoTime();
+        int count = 0;
+        for (Player player : players)
+            count += player.getIsHuman() ? 1 : 2;
+        started = new CountDownLatch(count);
+        starting = true;
+        for (Player player : players)
+            threads.add(new Thread(player, "Player" + player.getId()));
+        long created = System.nanoTime();
+        for (Thread thread : threads)
+            thread.start();
+        long launched = System.nanoTime();
+        boolean ready = false;
+        try {
+            ready = started.await(env.config.startupTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ignored) {}
+        gate.countDown();
+        starting = false;
+        long end = System.nanoTime();
+        startupTimings.put("create", created - begin);
+        startupTimings.put("start", launched - created);
+        startupTimings.put("ready", end - launched);
+        if (!ready)
+            env.logger.severe(started.getCount() + " player and AI threads did not start in time");
+        System.out.printf("Info: %d players started in %s.%n", players.length, format(startupTimings));
+        return ready;
+    }
+
+    /**
+     * Called by a player or AI thread once it is running. Returns when all the threads are running (or the startup
+     * timeout passed), and at once for a thread not started by start.
+     */
+    public void threadStarted() {
+        if (!starting) return;
+        started.countDown();
+        try {
+            gate.await(env.config.startupTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ignored) {}
+    }
+
+    /**
+     * Terminates all the players and waits for their threads until the shutdown timeout
+     * (see Config.shutdownTimeoutMillis) passes. The threads still running then are interrupted and given the same
+     * time again. Only the first call does anything.
+     * @return - true iff all the player threads ended.
+     */
+    public synchronized boolean stop() {
+        if (stopped) return true;
+        stopped = true;
+        long begin = System.nanoTime();
+        for (Player player : players)
+            if (player != null) player.terminate();
+        long signalled = System.nanoTime();
+        boolean ended = joinAll(signalled + TimeUnit.MILLISECONDS.toNanos(env.config.shutdownTimeoutMillis));
+        long joined = System.nanoTime();
+        shutdownTimings.put("signal", signalled - begin);
+        shutdownTimings.put("join", joined - signalled);
+        if (!ended) {
+            for (Thread thread : threads)
+                if (thread.isAlive()) {
+                    env.logger.warning("interrupting " + thread.getName() + " after the shutdown deadline");
+                    thread.interrupt();
+                }
+            ended = joinAll(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(env.config.shutdownTimeoutMillis));
+            shutdownTimings.put("escalate", System.nanoTime() - joined);
+            for (Thread thread : threads)
+                if (thread.isAlive())
+                    env.logger.severe(thread.getName() + " did not terminate");
+        }
+        System.out.printf("Info: %d players stopped in %s.%n", players.length, format(shutdownTimings));
+        return ended;
+    }
+
+    private boolean joinAll(long deadline) {
+        for (Thread thread : threads) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) break;
+            try {
+                TimeUnit.NANOSECONDS.timedJoin(thread, remaining);
+            } catch (InterruptedException ignored) {}
+        }
+        for (Thread thread : threads)
+            if (thread.isAlive()) return false;
+        return true;
+    }
+
+    /**
+     * @return - the nanoseconds each startup phase took: creating the threads, starting them and waiting for them.
+     */
+    public synchronized Map<String, Long> getStartupTimings() {
+        return new LinkedHashMap<String, Long>(startupTimings);
+    }
+
+    /**
+     * @return - the nanoseconds each shutdown phase took: signalling the players, joining them and, if the deadline
+     *           passed, interrupting and joining the rest.
+     */
+    public synchronized Map<String, Long> getShutdownTimings() {
+        return new LinkedHashMap<String, Long>(shutdownTimings);
+    }
+
+    private static String format(Map<String, Long> timings) {
+        long total = 0;
+        StringBuilder phases = new StringBuilder();
+        for (Map.Entry<String, Long> phase : timings.entrySet()) {
+            total += phase.getValue();
+            phases.append(phases.length() == 0 ? "" : ", ")
+                    .append(String.format("%s %.3f ms", phase.getKey(), phase.getValue() / 1e6));
+        }
+        return String.format("%.3f ms (%s)", total / 1e6, phases);
+    }
+}
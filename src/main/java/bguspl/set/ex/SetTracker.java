@@ -0,0 +1,134 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Util;
+
+import java.util.Arrays;
+
+/**
+ * Keeps a group of cards and the number of legal sets among them up to date as cards are added and removed.
+ * Adding or removing a card counts the sets it is part of by completing it with every choice of featureSize - 2 of
+ * the other cards, which for the classic deck is one completion per card in the group.
+ * <p>
+ * Not thread safe: the owner guards it.
+ */
+public class SetTracker {
+
+    private final Util util;
+    private final int featureSize;
+
+    // the cards in the group, in the first size entries
+    private final int[] cards;
+    private int size;
+
+    // the index of each card in cards, -1 if the card is not in the group
+    private final int[] position;
+
+    // the number of legal sets among the cards in the group
+    private long sets;
+
+    public SetTracker(Config config, Util util) {
+        this.util = util;
+        this.featureSize = config.featureSize;
+        cards = new int[config.deckSize];
+        position = new int[config.deckSize];
+        Arrays.fill(position, -1);
+    }
+
+    /**
+     * Adds a card to the group (nothing if it is already in it).
+     * @param card - a card id.
+     */
+    public void add(int card) {
+        if (position[card] >= 0) return;
+        sets += setsWith(card);
+        position[card] = size;
+        cards[size++] = card;
+    }
+
+    /**
+     * Removes a card from the group (nothing if it is not in it).
+     * @param card - a card id.
+     */
+    public void remove(int card) {
+        int index = position[card];
+        if (index < 0) return;
+        cards[index] = cards[--size];
+        position[cards[index]] = index;
+        position[card] = -1;
+        sets -= setsWith(card);
+    }
+
+    /**
+     * Replaces the group by the given cards.
+     * @param cards - distinct card ids.
+     * @param sets  - the number of legal sets among them (e.g. by Util.countSetsExact).
+     */
+    public void reset(int[] cards, long sets) {
+        for (int i = 0; i < size; ++i)
+            position[this.cards[i]] = -1;
+        size = 0;
+        for (int card : cards) {
+            position[card] = size;
+            this.cards[size++] = card;
+        }
+        this.sets = sets;
+    }
+
+    /**
+     * @param card - a card id.
+     * @return - true iff the card is in the group.
+     */
+    public boolean contains(int card) {
+        return position[card] >= 0;
+    }
+
+    /**
+     * @return - the number of cards in the group.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return - the number of legal sets among the cards in the group.
+     */
+    public long countSets() {
+        return sets;
+    }
+
+    /**
+     * Counts the legal sets made of the given card and featureSize - 1 cards of the group.
+     * @param card - a card id that is not in the group.
+     */
+    private long setsWith(int card) {
+        if (featureSize == 1) return util.countSets(new int[]{card}); // counted like countSets counts one-card sets
+        if (featureSize == 2) return size; // with two values every feature is the same or different: any pair is a set
+
+        // complete the card with each combination of r cards in the group; a set is found once per card but the one
+        // added, that is featureSize - 1 times
+        int r = featureSize - 2;
+        if (size < r + 1) return 0;
+        int[] combination = new int[r];
+        Arrays.setAll(combination, i -> i);
+        int[] partial = new int[featureSize - 1];
+        partial[0] = card;
+        long found = 0;
+        while (true) {
+            for (int i = 0; i < r; ++i)
+                partial[i + 1] = cards[combination[i]];
+            int missing = util.completeSet(partial);
+            if (missing >= 0 && missing != card && position[missing] >= 0)
+                ++found;
+
+            int i = r - 1;
+            while (i >= 0 && combination[i] == size - r + i)
+                --i;
+            if (i < 0) break;
+            ++combination[i];
+            for (int j = i + 1; j < r; ++j)
+                combination[j] = combination[j - 1] + 1;
+        }
+        return found / (featureSize - 1);
+    }
+}
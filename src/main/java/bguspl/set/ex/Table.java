@@ -3,45 +3,115 @@ package bguspl.set.ex;
 import bguspl.set.Env;
 
 import java.util.Arrays;
-import java.util.*;
-import java.util.List;
-import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BooleanSupplier;
 
 /**
  * This class contains the data that is visible to the player.
+ * <p>
+ * Locking scheme:
+ * <ul>
+ * <li>Each slot has a lock. It is held while a card is placed on or removed from the slot and while a token is
+ * placed on or removed from it, so a token is never left on an empty slot. The dealer holds the locks of the claimed
+ * slots while it judges a claim, and only those. Slot locks are taken in ascending slot order (see lockSlots).</li>
+ * <li>The card layout (slotToCard, cardToSlot, setTracker, boardHash, version, slotVersions) is guarded by a
+ * StampedLock. It is written only under the slot lock of the slot being changed and read optimistically.</li>
+ * <li>The featureIndex guards itself (see FeatureIndex), so that it can be queried without any table lock. The
+ * table updates it along with the layout.</li>
+ * <li>Each player's tokens are guarded by a StampedLock of that player. They are written only under the slot lock of
+ * the token's slot and read optimistically.</li>
+ * </ul>
+ * The layout and player locks are never held together, and no slot lock is taken while holding one of them.
  *
  * @inv slotToCard[x] == y iff cardToSlot[y] == x
  */
 public class Table {
 
+     // Marks an empty slot in slotToCard and a card that is not on the table in cardToSlot.
+    public static final int NONE = -1;
+
      // The game environment object.
     private final Env env;
 
-     // Mapping between a slot and the card placed in it (null if none).
-    protected final Integer[] slotToCard; // card per slot (if any)
+     // Mapping between a slot and the card placed in it (NONE if none).
+    protected final int[] slotToCard; // card per slot (if any)
+
+     // Mapping between a card and the slot it is in (NONE if none).
+    protected final int[] cardToSlot; // slot per card (if any)
+
+     // The slots each player has a token on, one bit per slot.
+    private final long[][] tokenMasks;
+
+     // The slots each player has a token on, in placement order.
+    private final int[][] tokenSlots;
+
+     // The number of tokens each player has on the table.
+    private final int[] tokenCounts;
+
+     // The players that have a token on each slot, one bit per player (guarded by the slot lock).
+    private final long[][] slotPlayers;
+
+     // Guards a slot: the card on it and the tokens on it.
+    private final ReentrantLock[] slotLocks;
+
+     // Guards slotToCard, cardToSlot, setTracker, boardHash, version and slotVersions.
+    private final StampedLock layoutLock = new StampedLock();
+
+     // Guards the tokens of each player.
+    private final StampedLock[] playerLocks;
+
+     // The cards on the table by feature value.
+    private final FeatureIndex featureIndex;
 
-     // Mapping between a card and the slot it is in (null if none).
-    protected final Integer[] cardToSlot; // slot per card (if any)
-     // All tokens by all players
-    private List<Integer>[] playerTokens;
+     // The cards on the table and the number of sets among them.
+    private final SetTracker setTracker;
+
+     // The Zobrist hash of the cards in their slots: the xor of zobristKey(card, slot) over the cards on the table.
+    private long boardHash;
+
+     // The analyses of recently seen boards.
+    private final AnalysisCache analysisCache;
+
+     // The number of cards placed and removed so far.
+    private long version;
+
+     // The number of cards placed on and removed from each slot so far.
+    private final long[] slotVersions;
+
+     // Called after each card placed or removed (if any).
+    private volatile Runnable boardListener;
 
     /**
      * Constructor for testing.
      *
      * @param env        - the game environment objects.
-     * @param slotToCard - mapping between a slot and the card placed in it (null if none).
-     * @param cardToSlot - mapping between a card and the slot it is in (null if none).
+     * @param slotToCard - mapping between a slot and the card placed in it (NONE if none).
+     * @param cardToSlot - mapping between a card and the slot it is in (NONE if none).
      */
-    public Table(Env env, Integer[] slotToCard, Integer[] cardToSlot) {
+    public Table(Env env, int[] slotToCard, int[] cardToSlot) {
 
         this.env = env;
         this.slotToCard = slotToCard;
         this.cardToSlot = cardToSlot;
-        this.playerTokens = new LinkedList[env.config.players];
-        for (int i=0; i<env.config.players; i++){
-            playerTokens[i] = new LinkedList<Integer>();
-        }
+        this.tokenMasks = new long[env.config.players][(env.config.tableSize + Long.SIZE - 1) / Long.SIZE];
+        this.tokenSlots = new int[env.config.players][env.config.featureSize];
+        this.tokenCounts = new int[env.config.players];
+        this.slotPlayers = new long[env.config.tableSize][(env.config.players + Long.SIZE - 1) / Long.SIZE];
+        this.slotLocks = new ReentrantLock[env.config.tableSize];
+        Arrays.setAll(slotLocks, slot -> new ReentrantLock());
+        this.playerLocks = new StampedLock[env.config.players];
+        Arrays.setAll(playerLocks, player -> new StampedLock());
+        this.featureIndex = new FeatureIndex(env);
+        this.setTracker = new SetTracker(env.config, env.util);
+        this.analysisCache = new AnalysisCache(env.config.analysisCacheSize);
+        this.slotVersions = new long[env.config.tableSize];
+        for (int slot = 0; slot < slotToCard.length; ++slot)
+            if (slotToCard[slot] != NONE) {
+                featureIndex.add(slotToCard[slot]);
+                setTracker.add(slotToCard[slot]);
+                boardHash ^= zobristKey(slotToCard[slot], slot);
+            }
 
     }
 
@@ -52,20 +122,162 @@ public class Table {
      */
     public Table(Env env) {
 
-        this(env, new Integer[env.config.tableSize], new Integer[env.config.deckSize]);
+        this(env, emptyMapping(env.config.tableSize), emptyMapping(env.config.deckSize));
+    }
+
+    /**
+     * @param length - the length of the mapping.
+     * @return - a mapping with every entry NONE.
+     */
+    public static int[] emptyMapping(int length) {
+        int[] mapping = new int[length];
+        Arrays.fill(mapping, NONE);
+        return mapping;
     }
 
     /**
      * This method prints all possible legal sets of cards that are currently on the table.
      */
     public void hints() {
-        List<Integer> deck = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
-        env.util.findSets(deck, Integer.MAX_VALUE).forEach(set -> {
-            StringBuilder sb = new StringBuilder().append("Hint: Set found: ");
-            List<Integer> slots = Arrays.stream(set).mapToObj(card -> cardToSlot[card]).sorted().collect(Collectors.toList());
-            int[][] features = env.util.cardsToFeatures(set);
-            System.out.println(sb.append("slots: ").append(slots).append(" features: ").append(Arrays.deepToString(features)));
-        });
+        System.out.print(analyze().getHints());
+    }
+
+    /**
+     * @return - the sets on the table and the hints describing them, from the analysis cache if the board was seen
+     *           recently.
+     */
+    public TableAnalysis analyze() {
+        return analyze(() -> false);
+    }
+
+    /**
+     * Analyzes the table unless cancelled first (see TableAnalysis.of).
+     * @param cancelled - polled while the sets are searched; the analysis stops once it returns true.
+     * @return - the sets on the table and the hints describing them, or null if cancelled.
+     */
+    public TableAnalysis analyze(BooleanSupplier cancelled) {
+        long stamp = layoutLock.tryOptimisticRead();
+        long hash = boardHash;
+        int[] board = slotToCard.clone();
+        if (!layoutLock.validate(stamp)) {
+            stamp = layoutLock.readLock();
+            try {
+                hash = boardHash;
+                board = slotToCard.clone();
+            } finally {
+                layoutLock.unlockRead(stamp);
+            }
+        }
+
+        TableAnalysis analysis = analysisCache.get(hash, board);
+        if (analysis == null) {
+            analysis = TableAnalysis.of(env, hash, board, cancelled);
+            if (analysis != null)
+                analysisCache.put(analysis);
+        }
+        return analysis;
+    }
+
+    /**
+     * @return - the number of cards placed and removed so far: the table changed iff it changed.
+     */
+    public long version() {
+        long stamp = layoutLock.tryOptimisticRead();
+        long current = version;
+        if (!layoutLock.validate(stamp)) {
+            stamp = layoutLock.readLock();
+            try {
+                current = version;
+            } finally {
+                layoutLock.unlockRead(stamp);
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @param slot - a slot.
+     * @return - the number of cards placed on and removed from the slot so far: its card changed iff it changed.
+     */
+    public long slotVersion(int slot) {
+        long stamp = layoutLock.tryOptimisticRead();
+        long current = slotVersions[slot];
+        if (!layoutLock.validate(stamp)) {
+            stamp = layoutLock.readLock();
+            try {
+                current = slotVersions[slot];
+            } finally {
+                layoutLock.unlockRead(stamp);
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @param slots - slots.
+     * @return - the versions of the slots (see slotVersion), read together.
+     */
+    public long[] slotVersions(int[] slots) {
+        long stamp = layoutLock.tryOptimisticRead();
+        long[] current = slotVersionsUnlocked(slots);
+        if (!layoutLock.validate(stamp)) {
+            stamp = layoutLock.readLock();
+            try {
+                current = slotVersionsUnlocked(slots);
+            } finally {
+                layoutLock.unlockRead(stamp);
+            }
+        }
+        return current;
+    }
+
+    private long[] slotVersionsUnlocked(int[] slots) {
+        long[] current = new long[slots.length];
+        for (int i = 0; i < slots.length; ++i)
+            current[i] = slotVersions[slots[i]];
+        return current;
+    }
+
+    /**
+     * @param listener - called after each card placed on or removed from the table (null: none).
+     */
+    public void setBoardListener(Runnable listener) {
+        boardListener = listener;
+    }
+
+    /**
+     * @return - the Zobrist hash of the cards in their slots, equal for equal boards.
+     */
+    public long boardHash() {
+        long stamp = layoutLock.tryOptimisticRead();
+        long hash = boardHash;
+        if (!layoutLock.validate(stamp)) {
+            stamp = layoutLock.readLock();
+            try {
+                hash = boardHash;
+            } finally {
+                layoutLock.unlockRead(stamp);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @return - the cache of board analyses, e.g. for its hit and miss counters.
+     */
+    public AnalysisCache getAnalysisCache() {
+        return analysisCache;
+    }
+
+    /**
+     * The random key of a card in a slot (SplitMix64 of the pair's index), computed rather than stored so that it
+     * costs no memory on large decks.
+     */
+    private long zobristKey(int card, int slot) {
+        long z = ((long) card * env.config.tableSize + slot + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
     }
 
     /**
@@ -74,13 +286,71 @@ public class Table {
      * @return - the number of cards on the table.
      */
     public int countCards() {
+        long stamp = layoutLock.tryOptimisticRead();
+        int cards = countCardsUnlocked();
+        if (!layoutLock.validate(stamp)) {
+            stamp = layoutLock.readLock();
+            try {
+                cards = countCardsUnlocked();
+            } finally {
+                layoutLock.unlockRead(stamp);
+            }
+        }
+        return cards;
+    }
+
+    private int countCardsUnlocked() {
         int cards = 0;
-        for (Integer card : slotToCard)
-            if (card != null)
+        for (int card : slotToCard)
+            if (card != NONE)
                 ++cards;
         return cards;
     }
 
+    /**
+     * @return - the number of legal sets among the cards currently on the table, kept up to date as cards are
+     *           placed and removed.
+     */
+    public long countSets() {
+        long stamp = layoutLock.tryOptimisticRead();
+        long sets = setTracker.countSets();
+        if (!layoutLock.validate(stamp)) {
+            stamp = layoutLock.readLock();
+            try {
+                sets = setTracker.countSets();
+            } finally {
+                layoutLock.unlockRead(stamp);
+            }
+        }
+        return sets;
+    }
+
+    /**
+     * @return - the cards currently on the table, in slot order.
+     */
+    public int[] cardsOnTable() {
+        long stamp = layoutLock.tryOptimisticRead();
+        int[] cards = cardsOnTableUnlocked();
+        if (!layoutLock.validate(stamp)) {
+            stamp = layoutLock.readLock();
+            try {
+                cards = cardsOnTableUnlocked();
+            } finally {
+                layoutLock.unlockRead(stamp);
+            }
+        }
+        return cards;
+    }
+
+    private int[] cardsOnTableUnlocked() {
+        int[] cards = new int[slotToCard.length];
+        int count = 0;
+        for (int card : slotToCard)
+            if (card != NONE)
+                cards[count++] = card;
+        return Arrays.copyOf(cards, count);
+    }
+
     /**
      * Places a card on the table in a grid slot.
      * @param card - the card id to place in the slot.
@@ -92,9 +362,25 @@ public class Table {
         try {
             Thread.sleep(env.config.tableDelayMillis);
         } catch (InterruptedException ignored) {}
-        env.ui.placeCard(card, slot);
-        cardToSlot[card] = slot;
-        slotToCard[slot] = card;
+        slotLocks[slot].lock();
+        try {
+            env.ui.placeCard(card, slot);
+            long stamp = layoutLock.writeLock();
+            try {
+                cardToSlot[card] = slot;
+                slotToCard[slot] = card;
+                featureIndex.add(card);
+                setTracker.add(card);
+                boardHash ^= zobristKey(card, slot);
+                ++version;
+                ++slotVersions[slot];
+            } finally {
+                layoutLock.unlockWrite(stamp);
+            }
+        } finally {
+            slotLocks[slot].unlock();
+        }
+        boardChanged();
     }
 
     /**
@@ -105,23 +391,65 @@ public class Table {
         try {
             Thread.sleep(env.config.tableDelayMillis);
         } catch (InterruptedException ignored) {}
-        synchronized (slotToCard){
-            synchronized(cardToSlot){
-              Integer card = slotToCard[slot];
-              if(card!=null){
-                 slotToCard[slot] = null;
-                 cardToSlot[card] = null;
-              }
+        slotLocks[slot].lock();
+        try {
+            long stamp = layoutLock.writeLock();
+            try {
+                int card = slotToCard[slot];
+                if(card!=NONE){
+                   slotToCard[slot] = NONE;
+                   cardToSlot[card] = NONE;
+                   featureIndex.remove(card);
+                   setTracker.remove(card);
+                   boardHash ^= zobristKey(card, slot);
+                   ++version;
+                   ++slotVersions[slot];
+                }
+            } finally {
+                layoutLock.unlockWrite(stamp);
             }
-        }
-        synchronized(playerTokens){
-        for(int i=0; i<playerTokens.length;i++){
-            if(this.hasTokenOn(i, slot)){
-                this.removeToken(i, slot);
+            boolean hadTokens = false;
+            long[] players = slotPlayers[slot];
+            for(int i=0; i<players.length; i++){
+                for(long word = players[i]; word != 0; word &= word - 1){
+                    untrackToken(i * Long.SIZE + Long.numberOfTrailingZeros(word), slot);
+                    hadTokens = true;
+                }
             }
+            if(hadTokens)
+                env.ui.removeTokens(slot);
+            env.ui.removeCard(slot);
+        } finally {
+            slotLocks[slot].unlock();
         }
-        }
-        env.ui.removeCard(slot);
+        boardChanged();
+    }
+
+    private void boardChanged() {
+        Runnable listener = boardListener;
+        if (listener != null)
+            listener.run();
+    }
+
+    /**
+     * Locks slots for judging a claim on them: the cards and tokens on them stay as they are until unlockSlots.
+     * The locks are taken in ascending slot order, so concurrent claims on overlapping slots cannot deadlock.
+     * @param slots - the slots to lock.
+     */
+    public void lockSlots(int[] slots) {
+        int[] sorted = slots.clone();
+        Arrays.sort(sorted);
+        for (int slot : sorted)
+            slotLocks[slot].lock();
+    }
+
+    /**
+     * Unlocks slots locked by lockSlots.
+     * @param slots - the slots to unlock.
+     */
+    public void unlockSlots(int[] slots) {
+        for (int slot : slots)
+            slotLocks[slot].unlock();
     }
 
     /**
@@ -130,19 +458,33 @@ public class Table {
      * @param slot   - the slot on which to place the token.
      */
     public boolean placeToken(int player, int slot) {
-        if(!allTokensPlaced(player) && slot>=0 && slot<env.config.tableSize && slotToCard[slot] != null){
-           synchronized(playerTokens){this.playerTokens[player].add((Integer)slot);}
+        if(slot<0 || slot>=env.config.tableSize || allTokensPlaced(player))
+           return false;
+        slotLocks[slot].lock();
+        try {
+           if(slotToCard[slot] == NONE)
+              return false;
+           StampedLock lock = playerLocks[player];
+           long stamp = lock.writeLock();
+           try {
+              if(hasTokenOnUnlocked(player, slot) || tokenCounts[player] == env.config.featureSize)
+                 return false;
+              tokenMasks[player][slot / Long.SIZE] |= 1L << slot;
+              tokenSlots[player][tokenCounts[player]++] = slot;
+           } finally {
+              lock.unlockWrite(stamp);
+           }
+           slotPlayers[slot][player / Long.SIZE] |= 1L << player;
            env.ui.placeToken(player, slot);
            return true;
+        } finally {
+           slotLocks[slot].unlock();
         }
-        return false;
     }
 
     public boolean allTokensPlaced(int player){
 
-           if(playerTokens[player].size() == env.config.featureSize)
-              return true;
-           return false;
+           return countTokens(player) == env.config.featureSize;
         
     }
 
@@ -153,21 +495,129 @@ public class Table {
      * @return       - true iff a token was successfully removed.
      */
     public boolean removeToken(int player, int slot) {
-        boolean ans;
-        synchronized(playerTokens){ ans = this.playerTokens[player].remove((Integer)slot);}
-        if(ans){
-            env.ui.removeToken(player, slot);
+        if(!hasTokenOn(player, slot))
+           return false;
+        slotLocks[slot].lock();
+        try {
+           if(!untrackToken(player, slot))
+              return false;
+           env.ui.removeToken(player, slot);
+           return true;
+        } finally {
+           slotLocks[slot].unlock();
+        }
+    }
+
+    /**
+     * Forgets a token of a player without updating the ui. The caller holds the slot lock.
+     * @param player - the player the token belongs to.
+     * @param slot   - the slot the token is on.
+     * @return       - true iff the player had a token on the slot.
+     */
+    private boolean untrackToken(int player, int slot) {
+        StampedLock lock = playerLocks[player];
+        long stamp = lock.writeLock();
+        try {
+           if(!hasTokenOnUnlocked(player, slot))
+              return false;
+           tokenMasks[player][slot / Long.SIZE] &= ~(1L << slot);
+           int[] slots = tokenSlots[player];
+           int i = 0;
+           while(slots[i] != slot)
+              ++i;
+           System.arraycopy(slots, i + 1, slots, i, --tokenCounts[player] - i);
+        } finally {
+           lock.unlockWrite(stamp);
         }
-        return ans;
+        slotPlayers[slot][player / Long.SIZE] &= ~(1L << player);
+        return true;
     }
 
     public boolean hasTokenOn(int player, int slot){
-           if(playerTokens[player] !=null)
-              return playerTokens[player].contains((Integer)slot);
-           return false;
+           if(slot<0 || slot>=env.config.tableSize)
+              return false;
+           StampedLock lock = playerLocks[player];
+           long stamp = lock.tryOptimisticRead();
+           boolean has = hasTokenOnUnlocked(player, slot);
+           if(!lock.validate(stamp)){
+              stamp = lock.readLock();
+              try {
+                 has = hasTokenOnUnlocked(player, slot);
+              } finally {
+                 lock.unlockRead(stamp);
+              }
+           }
+           return has;
+    }
+
+    private boolean hasTokenOnUnlocked(int player, int slot){
+           return (tokenMasks[player][slot / Long.SIZE] & (1L << slot)) != 0;
+    }
+
+    /**
+     * @param player - the player.
+     * @param slots  - the slots.
+     * @return - true iff the player has a token on each of the slots.
+     */
+    public boolean hasTokensOn(int player, int[] slots){
+           for(int slot : slots)
+              if(!hasTokenOn(player, slot))
+                 return false;
+           return true;
+    }
+
+    /**
+     * @param player - the player.
+     * @return - the slots the player has a token on, in placement order, in the first countTokens(player) entries.
+     *           The array is owned by the table and changes as tokens are placed and removed; see copyTokens.
+     */
+    public int[] getTokens(int player){
+           return this.tokenSlots[player];
+    }
+
+    /**
+     * @param player - the player.
+     * @return - a consistent copy of the slots the player has a token on, in placement order.
+     */
+    public int[] copyTokens(int player){
+           StampedLock lock = playerLocks[player];
+           long stamp = lock.tryOptimisticRead();
+           int[] tokens = Arrays.copyOf(tokenSlots[player], Math.min(tokenCounts[player], env.config.featureSize));
+           if(!lock.validate(stamp)){
+              stamp = lock.readLock();
+              try {
+                 tokens = Arrays.copyOf(tokenSlots[player], tokenCounts[player]);
+              } finally {
+                 lock.unlockRead(stamp);
+              }
+           }
+           return tokens;
     }
-    
-    public List<Integer> getTokens(int player){
-           return this.playerTokens[player];
+
+    /**
+     * @param player - the player.
+     * @return - the number of tokens the player has on the table.
+     */
+    public int countTokens(int player){
+           StampedLock lock = playerLocks[player];
+           long stamp = lock.tryOptimisticRead();
+           int count = tokenCounts[player];
+           if(!lock.validate(stamp)){
+              stamp = lock.readLock();
+              try {
+                 count = tokenCounts[player];
+              } finally {
+                 lock.unlockRead(stamp);
+              }
+           }
+           return count;
+    }
+
+    /**
+     * @return - the index of the cards on the table by feature value, for partial-match queries by bots, hints and
+     *           dealer policies. It may be queried without holding any table lock.
+     */
+    public FeatureIndex getFeatureIndex(){
+           return featureIndex;
     }
 }
@@ -0,0 +1,111 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * The legal sets on one board and the hints describing them. Immutable: it may be shared between threads and kept
+ * in an AnalysisCache for as long as the board recurs.
+ */
+public final class TableAnalysis {
+
+    // the Zobrist hash of the board (see Table.boardHash)
+    private final long hash;
+
+    // the card in each slot of the board (Table.NONE if none)
+    private final int[] slotToCard;
+
+    // the legal sets among the cards on the board
+    private final List<int[]> sets;
+
+    // one "Hint: Set found" line per set
+    private final String hints;
+
+    private TableAnalysis(long hash, int[] slotToCard, List<int[]> sets, String hints) {
+        this.hash = hash;
+        this.slotToCard = slotToCard;
+        this.sets = sets;
+        this.hints = hints;
+    }
+
+    /**
+     * Finds the sets on a board.
+     * @param env        - the game environment objects.
+     * @param hash       - the Zobrist hash of the board.
+     * @param slotToCard - the card in each slot of the board (Table.NONE if none); kept, so it must not change.
+     * @return - the analysis of the board.
+     */
+    public static TableAnalysis of(Env env, long hash, int[] slotToCard) {
+        return of(env, hash, slotToCard, () -> false);
+    }
+
+    /**
+     * Finds the sets on a board unless the analysis is cancelled first.
+     * @param env        - the game environment objects.
+     * @param hash       - the Zobrist hash of the board.
+     * @param slotToCard - the card in each slot of the board (Table.NONE if none); kept, so it must not change.
+     * @param cancelled  - polled between sets; the analysis stops once it returns true.
+     * @return - the analysis of the board, or null if it was cancelled.
+     */
+    public static TableAnalysis of(Env env, long hash, int[] slotToCard, BooleanSupplier cancelled) {
+        int[] cardToSlot = new int[env.config.deckSize];
+        int[] cards = new int[slotToCard.length];
+        int count = 0;
+        for (int slot = 0; slot < slotToCard.length; ++slot)
+            if (slotToCard[slot] != Table.NONE) {
+                cardToSlot[slotToCard[slot]] = slot;
+                cards[count++] = slotToCard[slot];
+            }
+
+        List<int[]> sets = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        for (Iterator<int[]> it = env.util.streamSets(Arrays.copyOf(cards, count)).iterator(); it.hasNext(); ) {
+            if (cancelled.getAsBoolean()) return null;
+            int[] set = it.next();
+            sets.add(set);
+            List<Integer> slots = Arrays.stream(set).mapToObj(card -> cardToSlot[card]).sorted().collect(Collectors.toList());
+            int[][] features = env.util.cardsToFeatures(set);
+            sb.append("Hint: Set found: slots: ").append(slots).append(" features: ").append(Arrays.deepToString(features))
+                    .append(System.lineSeparator());
+        }
+        return new TableAnalysis(hash, slotToCard, Collections.unmodifiableList(sets), sb.toString());
+    }
+
+    /**
+     * @param hash       - the Zobrist hash of a board.
+     * @param slotToCard - the card in each slot of the board.
+     * @return - true iff this is the analysis of that board (the hash alone may collide).
+     */
+    public boolean isOf(long hash, int[] slotToCard) {
+        return this.hash == hash && Arrays.equals(this.slotToCard, slotToCard);
+    }
+
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * @return - the legal sets on the board (the arrays must not be modified).
+     */
+    public List<int[]> getSets() {
+        return sets;
+    }
+
+    public int countSets() {
+        return sets.size();
+    }
+
+    /**
+     * @return - one line per legal set on the board, naming its slots and features (empty if there are none).
+     */
+    public String getHints() {
+        return hints;
+    }
+}
@@ -0,0 +1,181 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Runs the game's timed callbacks (freeze and countdown updates, the turn timeout) on one thread.
+ * Timers hash by their due tick into a ring of buckets, so scheduling and cancelling are O(1) from any thread, and
+ * each tick only looks at one bucket; a timer due more than a full turn of the ring away just stays in its bucket
+ * until its tick comes. Callbacks run on the wheel's thread, never before their deadline and at most a tick after
+ * it, and must be short. The thread sleeps through the ticks with empty buckets, and while there are no timers.
+ */
+public class TimerWheel implements Runnable {
+
+    /**
+     * A scheduled callback.
+     */
+    public static final class Timer {
+
+        private final long dueTick;
+        private final Runnable task;
+
+        private volatile boolean cancelled;
+
+        private Timer(long dueTick, Runnable task) {
+            this.dueTick = dueTick;
+            this.task = task;
+        }
+
+        /**
+         * Keeps the callback from running, if it did not yet.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private final Env env;
+
+    private final long tickMillis;
+
+    // the timers of each bucket, touched by the wheel's thread only
+    private final List<List<Timer>> buckets;
+
+    // the timers scheduled since the last tick, moved into their buckets by the wheel's thread
+    private final Queue<Timer> scheduled = new ConcurrentLinkedQueue<Timer>();
+
+    // the last tick processed, and the number of timers in the buckets
+    private long currentTick;
+    private volatile int pending;
+
+    // the tick the wheel's thread sleeps until (Long.MAX_VALUE: until a timer is scheduled), guarded by this
+    private long wakeTick;
+
+    private volatile boolean terminate;
+
+    /**
+     * @param env        - the game environment object.
+     * @param tickMillis - the resolution of the timers in milliseconds.
+     * @param wheelSize  - the number of buckets.
+     */
+    public TimerWheel(Env env, long tickMillis, int wheelSize) {
+        this.env = env;
+        this.tickMillis = tickMillis;
+        buckets = new ArrayList<List<Timer>>(wheelSize);
+        for (int i = 0; i < wheelSize; ++i)
+            buckets.add(new ArrayList<Timer>());
+        currentTick = System.currentTimeMillis() / tickMillis;
+    }
+
+    /**
+     * Schedules a callback.
+     * @param delayMillis - the number of milliseconds until the callback runs (0 or less: at the next tick).
+     * @param task        - the callback.
+     * @return - the timer, to cancel it.
+     */
+    public Timer schedule(long delayMillis, Runnable task) {
+        long deadline = System.currentTimeMillis() + Math.max(delayMillis, 0);
+        Timer timer = new Timer((deadline + tickMillis - 1) / tickMillis, task);
+        scheduled.offer(timer);
+        synchronized (this) {
+            if (timer.dueTick < wakeTick) notifyAll(); // the wheel would sleep past it
+        }
+        return timer;
+    }
+
+    @Override
+    public void run() {
+        System.out.printf("Info: Thread %s starting.%n", Thread.currentThread().getName());
+        while (!terminate) {
+            synchronized (this) {
+                while (!terminate && pending == 0 && scheduled.isEmpty()) {
+                    wakeTick = Long.MAX_VALUE;
+                    try { wait(); } catch (InterruptedException ignored) {}
+                }
+                wakeTick = 0;
+            }
+            long now = System.currentTimeMillis();
+            if (pending == 0)
+                currentTick = Math.max(currentTick, now / tickMillis - 1); // nothing is due in the ticks slept through
+            for (Timer timer = scheduled.poll(); timer != null; timer = scheduled.poll()) {
+                long tick = Math.max(timer.dueTick, currentTick + 1); // an overdue timer runs at the next tick
+                buckets.get((int) (tick % buckets.size())).add(timer);
+                ++pending;
+            }
+            advance(now / tickMillis);
+
+            long nextTick = nextBusyTick();
+            synchronized (this) {
+                long sleep = nextTick * tickMillis - System.currentTimeMillis();
+                if (!terminate && sleep > 0 && pending > 0 && scheduled.isEmpty()) {
+                    wakeTick = nextTick;
+                    try { wait(sleep); } catch (InterruptedException ignored) {}
+                }
+                wakeTick = 0;
+            }
+        }
+        System.out.printf("Info: Thread %s terminated.%n", Thread.currentThread().getName());
+    }
+
+    /**
+     * Runs the timers due up to a tick.
+     */
+    private void advance(long tick) {
+        if (tick - currentTick > buckets.size())
+            currentTick = tick - buckets.size(); // each bucket is looked at once
+        while (currentTick < tick) {
+            ++currentTick;
+            List<Timer> bucket = buckets.get((int) (currentTick % buckets.size()));
+            for (int i = bucket.size() - 1; i >= 0; --i) {
+                Timer timer = bucket.get(i);
+                if (timer.dueTick > tick && !timer.cancelled)
+                    continue;
+                bucket.set(i, bucket.get(bucket.size() - 1));
+                bucket.remove(bucket.size() - 1);
+                --pending;
+                if (!timer.cancelled)
+                    fire(timer);
+            }
+        }
+    }
+
+    /**
+     * @return - the first tick after the current one whose bucket has timers, so that the thread sleeps through the
+     *           empty ones (a full turn of the ring if there are none).
+     */
+    private long nextBusyTick() {
+        for (long tick = currentTick + 1; tick <= currentTick + buckets.size(); ++tick)
+            if (!buckets.get((int) (tick % buckets.size())).isEmpty())
+                return tick;
+        return currentTick + buckets.size();
+    }
+
+    private void fire(Timer timer) {
+        try {
+            timer.task.run();
+        } catch (RuntimeException e) {
+            env.logger.severe("timer callback failed: " + e);
+        }
+    }
+
+    /**
+     * @return - the number of timers scheduled and not run or dropped yet (including cancelled ones).
+     */
+    public int size() {
+        return pending + scheduled.size();
+    }
+
+    public synchronized void terminate() {
+        terminate = true;
+        notifyAll();
+    }
+}
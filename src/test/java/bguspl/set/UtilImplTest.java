@@ -0,0 +1,335 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class UtilImplTest {
+
+    private static Config config(int featureSize, int featureCount) {
+        return config(featureSize, featureCount, new Properties());
+    }
+
+    private static Config config(int featureSize, int featureCount, Properties properties) {
+        properties.put("FeatureSize", Integer.toString(featureSize));
+        properties.put("FeatureCount", Integer.toString(featureCount));
+        return new Config(Logger.getAnonymousLogger(), properties);
+    }
+
+    private static boolean isSet(Config config, int[] cards) {
+        for (int f = 0, weight = 1; f < config.featureCount; ++f, weight *= config.featureSize) {
+            boolean sameSame = true, butDifferent = true;
+            for (int i = 0; i < cards.length; ++i)
+                for (int j = i + 1; j < cards.length; ++j) {
+                    if (cards[i] / weight % config.featureSize == cards[j] / weight % config.featureSize)
+                        butDifferent = false;
+                    else
+                        sameSame = false;
+                }
+            if (sameSame == butDifferent) return false;
+        }
+        return true;
+    }
+
+    // reference search: every featureSize-combination of the deck, in lexicographic order
+    private static List<int[]> bruteForceSets(Config config, List<Integer> deck) {
+        List<int[]> sets = new LinkedList<>();
+        collect(config, deck, new int[config.featureSize], 0, 0, sets);
+        return sets;
+    }
+
+    private static void collect(Config config, List<Integer> deck, int[] chosen, int depth, int from, List<int[]> sets) {
+        if (depth == chosen.length) {
+            int[] cards = IntStream.of(chosen).map(deck::get).sorted().toArray();
+            if (isSet(config, cards)) sets.add(cards);
+            return;
+        }
+        for (int i = from; i < deck.size(); ++i) {
+            chosen[depth] = i;
+            collect(config, deck, chosen, depth + 1, i + 1, sets);
+        }
+    }
+
+    private static List<Integer> shuffledDeck(Config config, long seed) {
+        List<Integer> deck = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+        Collections.shuffle(deck, new Random(seed));
+        return deck;
+    }
+
+    private static void assertSameSets(List<int[]> expected, List<int[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        Iterator<int[]> expectedSets = expected.iterator();
+        for (int[] set : actual)
+            assertArrayEquals(expectedSets.next(), set);
+    }
+
+    @Test
+    void cardToFeatures_MatchesCardDigits() {
+        Config config = config(3, 4);
+        Util util = new UtilImpl(config);
+        for (int card = 0; card < config.deckSize; ++card) {
+            int[] digits = new int[config.featureCount];
+            for (int i = config.featureCount - 1, rest = card; i >= 0; --i, rest /= config.featureSize)
+                digits[i] = rest % config.featureSize;
+            assertArrayEquals(digits, util.cardToFeatures(card));
+            assertEquals(digits[1], util.featureTable().feature(card, 1));
+        }
+    }
+
+    @Test
+    void findSets_MatchesBruteForceOnAllShapes() {
+        int[][] shapes = {{1, 3}, {2, 3}, {3, 1}, {3, 2}, {3, 3}, {3, 4}, {4, 2}, {4, 3}, {5, 2}, {16, 4}};
+        for (int[] shape : shapes) {
+            Config config = config(shape[0], shape[1]);
+            Util util = new UtilImpl(config);
+            for (long seed = 0; seed < 3; ++seed) {
+                List<Integer> deck = new ArrayList<>(shuffledDeck(config, seed).subList(0, Math.min(config.deckSize, 20)));
+                assertSameSets(bruteForceSets(config, deck), util.findSets(deck, Integer.MAX_VALUE));
+            }
+        }
+    }
+
+    @Test
+    void findSets_FullDeckHonoursCount() {
+        Config config = config(3, 4);
+        Util util = new UtilImpl(config);
+        List<Integer> deck = shuffledDeck(config, 42);
+        List<int[]> expected = bruteForceSets(config, deck);
+
+        assertEquals(1080, expected.size());
+        assertSameSets(expected, util.findSets(deck, Integer.MAX_VALUE));
+        assertSameSets(expected.subList(0, 5), util.findSets(deck, 5));
+    }
+
+    @Test
+    void findSets_ParallelMatchesSequential() {
+        Properties parallel = new Properties();
+        parallel.put("ParallelSearchThreshold", "1");
+        Properties sequential = new Properties();
+        sequential.put("ParallelSearchThreshold", "0");
+        for (int featureCount = 2; featureCount <= 6; featureCount += 2) {
+            List<Integer> deck = shuffledDeck(config(3, featureCount), featureCount);
+            List<int[]> expected = new UtilImpl(config(3, featureCount, sequential)).findSets(deck, Integer.MAX_VALUE);
+            Config config = config(3, featureCount, parallel);
+            Util util = new UtilImpl(config);
+
+            // a full deck of n features holds 3^n * (3^n - 1) / 6 sets
+            assertEquals(deck.size() * (deck.size() - 1) / 6, expected.size());
+            assertSameSets(expected, util.findSets(deck, Integer.MAX_VALUE));
+
+            List<int[]> limited = util.findSets(deck, 10);
+            assertEquals(10, limited.size());
+            limited.forEach(set -> assertTrue(isSet(config, set)));
+        }
+    }
+
+    @Test
+    void streamSets_CountSetsAndHasAnySetMatchBruteForce() {
+        int[][] shapes = {{2, 3}, {3, 2}, {3, 4}, {4, 3}, {5, 2}};
+        for (int[] shape : shapes) {
+            Config config = config(shape[0], shape[1]);
+            Util util = new UtilImpl(config);
+            for (int size = 0; size <= Math.min(config.deckSize, 16); ++size) {
+                List<Integer> deck = shuffledDeck(config, size).subList(0, size);
+                int[] cards = deck.stream().mapToInt(Integer::intValue).toArray();
+                List<int[]> expected = bruteForceSets(config, deck);
+
+                assertSameSets(expected, util.streamSets(cards).collect(Collectors.toList()));
+                assertSameSets(expected, util.streamSets(cards).parallel().collect(Collectors.toList()));
+                assertEquals(expected.size(), util.countSets(cards));
+                assertEquals(!expected.isEmpty(), util.hasAnySet(cards));
+            }
+        }
+    }
+
+    @Test
+    void countSetsExact_MatchesBruteForce() {
+        int[][] shapes = {{3, 1}, {3, 2}, {3, 3}, {3, 4}, {4, 2}};
+        for (int[] shape : shapes) {
+            Config config = config(shape[0], shape[1]);
+            Util util = new UtilImpl(config);
+            Random random = new Random(shape[1]);
+            for (int i = 0; i < 20; ++i) {
+                List<Integer> deck = shuffledDeck(config, i).subList(0, random.nextInt(Math.min(config.deckSize, 30) + 1));
+                int[] cards = deck.stream().mapToInt(Integer::intValue).toArray();
+                assertEquals(bruteForceSets(config, deck).size(), util.countSetsExact(cards));
+            }
+        }
+    }
+
+    @Test
+    void countSetsExact_LargeDecks() {
+        for (int featureCount = 5; featureCount <= 8; ++featureCount) {
+            Config config = config(3, featureCount);
+            Util util = new UtilImpl(config);
+            List<Integer> deck = shuffledDeck(config, featureCount);
+            int[] full = deck.stream().mapToInt(Integer::intValue).toArray();
+            int[] half = Arrays.copyOf(full, full.length / 2);
+
+            assertEquals((long) full.length * (full.length - 1) / 6, util.countSetsExact(full));
+            assertEquals(util.countSets(half), util.countSetsExact(half));
+        }
+    }
+
+    @Test
+    void findSets_FeaturesTooWideToPack() {
+        // 65 values of a single feature do not fit in a long: the only set is the whole deck
+        Config config = config(65, 1);
+        Util util = new UtilImpl(config);
+        List<int[]> sets = util.findSets(shuffledDeck(config, 7), Integer.MAX_VALUE);
+
+        assertEquals(1, sets.size());
+        assertArrayEquals(IntStream.range(0, 65).toArray(), sets.get(0));
+    }
+
+    @Test
+    void testSet_PackedMatchesPerFeature() {
+        int[][] shapes = {{2, 5}, {3, 4}, {4, 3}, {5, 2}, {16, 4}};
+        for (int[] shape : shapes) {
+            Config config = config(shape[0], shape[1]);
+            UtilImpl util = new UtilImpl(config);
+            Random random = new Random(shape[0] * 31L + shape[1]);
+
+            // every combination of small decks, random ones of big decks
+            if (config.deckSize <= 81) {
+                List<Integer> deck = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+                List<int[]> combinations = new LinkedList<>();
+                collectAll(deck, new int[config.featureSize], 0, 0, combinations);
+                for (int[] cards : combinations)
+                    assertEquals(util.testSetByFeatures(cards), util.testSet(cards));
+            }
+            for (int i = 0; i < 10000; ++i) {
+                int[] cards = random.ints(config.featureSize + random.nextInt(3) - 1, 0, config.deckSize).toArray();
+                assertEquals(util.testSetByFeatures(cards), util.testSet(cards));
+            }
+        }
+    }
+
+    @Test
+    void testSets_BatchMatchesSingleCandidates() {
+        int[][] shapes = {{3, 4}, {4, 3}, {65, 1}};
+        for (int[] shape : shapes) {
+            Config config = config(shape[0], shape[1]);
+            Util util = new UtilImpl(config);
+            Random random = new Random(shape[0]);
+            for (int k = config.featureSize - 1; k <= config.featureSize + 1; ++k) {
+                // an odd number of candidates leaves a tail after the full vectors
+                int candidates = 1001;
+                int[] flatCandidates = random.ints(candidates * k, 0, config.deckSize).toArray();
+                // make sure legal sets are part of the batch
+                List<int[]> sets = util.findSets(shuffledDeck(config, k), candidates / 2);
+                for (int i = 0; i < sets.size() && k == config.featureSize; ++i)
+                    System.arraycopy(sets.get(i), 0, flatCandidates, 2 * i * k, k);
+
+                boolean[] out = new boolean[candidates];
+                util.testSets(flatCandidates, k, out);
+                for (int i = 0; i < candidates; ++i)
+                    assertEquals(util.testSet(Arrays.copyOfRange(flatCandidates, i * k, i * k + k)), out[i]);
+            }
+        }
+    }
+
+    @Test
+    void testSets_VectorKernelMatchesScalar() {
+        Properties vector = new Properties();
+        vector.put("VectorKernel", "True");
+        assertFalse(new UtilImpl(config(3, 4)).isVectorized()); // off by default
+        assumeTrue(new UtilImpl(config(3, 4, (Properties) vector.clone())).isVectorized(),
+                "the vector kernel is not available");
+        int[][] shapes = {{3, 4}, {4, 3}, {8, 2}}; // shapes with a packed encoding
+        for (int[] shape : shapes) {
+            Config config = config(shape[0], shape[1]);
+            UtilImpl vectorized = new UtilImpl(config(shape[0], shape[1], (Properties) vector.clone()));
+            assertTrue(vectorized.isVectorized());
+            UtilImpl scalar = new UtilImpl(config);
+            Random random = new Random(shape[0]);
+            int k = config.featureSize;
+            int candidates = 1001;
+            int[] flatCandidates = random.ints(candidates * k, 0, config.deckSize).toArray();
+            List<int[]> sets = scalar.findSets(shuffledDeck(config, k), candidates / 2);
+            for (int i = 0; i < sets.size(); ++i)
+                System.arraycopy(sets.get(i), 0, flatCandidates, 2 * i * k, k);
+
+            boolean[] expected = new boolean[candidates];
+            boolean[] actual = new boolean[candidates];
+            scalar.testSets(flatCandidates, k, expected);
+            vectorized.testSets(flatCandidates, k, actual);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void forConfig_ClassicDeckKernelMatchesGeneric() {
+        Properties generic = new Properties();
+        generic.put("SpecializedKernels", "False");
+        Config config = config(3, 4);
+        Util specialized = UtilImpl.forConfig(config);
+        Util reference = UtilImpl.forConfig(config(3, 4, generic));
+
+        assertTrue(specialized instanceof ClassicDeckUtilImpl);
+        assertEquals(UtilImpl.class, reference.getClass());
+        assertEquals(UtilImpl.class, UtilImpl.forConfig(config(3, 3)).getClass());
+
+        for (int a = 0; a < config.deckSize; ++a)
+            for (int b = 0; b < config.deckSize; ++b)
+                for (int c = 0; c < config.deckSize; ++c) {
+                    int[] cards = {a, b, c};
+                    assertEquals(reference.testSet(cards), specialized.testSet(cards));
+                }
+        List<Integer> deck = shuffledDeck(config, 3);
+        assertSameSets(reference.findSets(deck, Integer.MAX_VALUE), specialized.findSets(deck, Integer.MAX_VALUE));
+    }
+
+    @Test
+    void completeSet_CompletesExactlyTheLegalSets() {
+        for (Config config : new Config[]{config(3, 4), config(4, 2), config(65, 1)}) {
+            Util util = UtilImpl.forConfig(config);
+            Random random = new Random(config.deckSize);
+            for (int trial = 0; trial < 500; ++trial) {
+                int[] cards = random.ints(0, config.deckSize).distinct().limit(config.featureSize).toArray();
+                int missing = util.completeSet(Arrays.copyOf(cards, config.featureSize - 1));
+                assertEquals(isSet(config, cards), missing == cards[config.featureSize - 1]);
+                if (missing >= 0) {
+                    cards[config.featureSize - 1] = missing;
+                    assertTrue(isSet(config, cards));
+                }
+            }
+        }
+    }
+
+    @Test
+    void completeSet_NoneBelowThreeValues() {
+        for (Config config : new Config[]{config(2, 4), config(1, 4)}) {
+            Util util = UtilImpl.forConfig(config);
+            for (int card = 0; card < config.deckSize; ++card)
+                assertEquals(-1, util.completeSet(Arrays.copyOf(new int[]{card}, config.featureSize - 1)));
+        }
+    }
+
+    private static void collectAll(List<Integer> deck, int[] chosen, int depth, int from, List<int[]> combinations) {
+        if (depth == chosen.length) {
+            combinations.add(IntStream.of(chosen).map(deck::get).toArray());
+            return;
+        }
+        for (int i = from; i < deck.size(); ++i) {
+            chosen[depth] = i;
+            collectAll(deck, chosen, depth + 1, i + 1, combinations);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class AnalysisCacheTest {
+
+    Env env;
+
+    @BeforeEach
+    void setUp() {
+        // purposely do not find the configuration files (use defaults here).
+        Logger logger = Logger.getAnonymousLogger();
+        Config config = new Config(logger, "");
+        env = new Env(logger, config, null, new UtilImpl(config));
+    }
+
+    private TableAnalysis analysis(long hash, int... slotToCard) {
+        return TableAnalysis.of(env, hash, slotToCard);
+    }
+
+    @Test
+    void get_CollidingHashIsAMiss() {
+        AnalysisCache cache = new AnalysisCache(4);
+        TableAnalysis analysis = analysis(7, 0, 1, 2);
+        cache.put(analysis);
+        assertEquals(analysis, cache.get(7, new int[]{0, 1, 2}));
+        assertNull(cache.get(7, new int[]{0, 1, 3}));
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    void put_EvictsLeastRecentlyUsed() {
+        AnalysisCache cache = new AnalysisCache(2);
+        cache.put(analysis(1, 0, 1, 2));
+        cache.put(analysis(2, 3, 4, 5));
+        cache.get(1, new int[]{0, 1, 2});
+        cache.put(analysis(3, 6, 7, 8));
+        assertEquals(2, cache.size());
+        assertNull(cache.get(2, new int[]{3, 4, 5}));
+        assertEquals(1, cache.get(1, new int[]{0, 1, 2}).getHash());
+    }
+
+    @Test
+    void put_NoCapacityKeepsNothing() {
+        AnalysisCache cache = new AnalysisCache(0);
+        cache.put(analysis(1, 0, 1, 2));
+        assertNull(cache.get(1, new int[]{0, 1, 2}));
+    }
+}
@@ -11,12 +11,15 @@ import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Properties;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Mockito.verify;
 
@@ -28,9 +31,9 @@ public class DealerTest {
     @Mock
     Table table;
     @Mock
-    private Integer[] slotToCard;
+    private int[] slotToCard;
     @Mock
-    private Integer[] cardToSlot;
+    private int[] cardToSlot;
     @Mock
     Player[] players;
     @Mock
@@ -60,8 +63,8 @@ public class DealerTest {
         properties.put("PlayerKeys1", "81,87,69,82");
         properties.put("PlayerKeys2", "85,73,79,80");
         config = new Config(logger, properties);
-        slotToCard = new Integer[config.tableSize];
-        cardToSlot = new Integer[config.deckSize];
+        slotToCard = Table.emptyMapping(config.tableSize);
+        cardToSlot = Table.emptyMapping(config.deckSize);
         ui = new UserInterfaceImpl(config);
         util = new UtilImpl(config);
         env = new Env(logger, config, ui, util);
@@ -84,12 +87,12 @@ public class DealerTest {
     }
 
     private void placeAllTokensOnValidSet(int player){
-        List<int[]> set = env.util.findSets(dealer.getDeck(), 1);
+        List<int[]> set = env.util.streamSets(dealer.getDeck().toArray()).limit(1).collect(Collectors.toList());
         for(int i = 0; i< set.get(0).length; i++){
-            if(table.cardToSlot[(Integer)set.get(0)[i]] != null){
-               table.removeCard(table.cardToSlot[(Integer)set.get(0)[i]]);
+            if(table.cardToSlot[set.get(0)[i]] != Table.NONE){
+               table.removeCard(table.cardToSlot[set.get(0)[i]]);
             }
-            if(table.slotToCard[i] != null){
+            if(table.slotToCard[i] != Table.NONE){
                 table.removeCard(i);
             }
             table.placeCard(set.get(0)[i], i);
@@ -99,45 +102,172 @@ public class DealerTest {
        table.placeToken(player,2 );
     }
     private void placeAllTokens(int player){
-        if(slotToCard[0] == null)
+        if(slotToCard[0] == Table.NONE)
            table.placeCard(6, 0);
         table.placeToken(player,0 );
-        if(slotToCard[1] == null)
+        if(slotToCard[1] == Table.NONE)
            table.placeCard(18, 1);
         table.placeToken(player,1 );
-        if(slotToCard[3] == null)
+        if(slotToCard[3] == Table.NONE)
            table.placeCard(19, 3);
         table.placeToken(player,3 );
      }
     @Test
     void testPointing(){ // verifies pointing/penalizing system
         placeAllTokensOnValidSet(players[0].getId()); //tokens on a valid set
-        dealer.appendRequest(players[0]);
+        Claim claim = dealer.appendRequest(players[0]);
         int expected = players[0].getScore() +1;
         Thread t = new Thread(()->{
             dealer.removeCardsFromTable();
         });
         t.start();
-        synchronized( players[0].getRequestLock()) { try{players[0].getRequestLock().wait();} catch (InterruptedException ig){}}
-        t.interrupt();
+        assertEquals(Claim.Verdict.POINT, claim.awaitVerdict()); // handed over from the dealer's thread
         assertEquals(expected, players[0].getScore());
-        for(Integer token : table.getTokens(players[0].getId())){
+        for(int token : table.copyTokens(players[0].getId())){
            table.removeToken(players[0].getId(), token);
         }
         
 
         placeAllTokens(players[0].getId()); //tokens on non-set
-        dealer.appendRequest(players[0]);
+        claim = dealer.appendRequest(players[0]);
         t = new Thread(()->{
             dealer.removeCardsFromTable();
         });
         t.start();
-        synchronized( players[0].getRequestLock()) { try{players[0].getRequestLock().wait();} catch (InterruptedException ig){}}
-        t.interrupt();
+        assertEquals(Claim.Verdict.PENALTY, claim.awaitVerdict());
         assertEquals(expected, players[0].getScore());
 
     }
 
+    @Test
+    void testOverlappingClaims(){ // the later claim on the same set is stale: no point and no penalty
+        placeAllTokensOnValidSet(players[0].getId());
+        table.placeToken(players[1].getId(), 0);
+        table.placeToken(players[1].getId(), 1);
+        table.placeToken(players[1].getId(), 2);
+        dealer.appendRequest(players[0]);
+        Claim stale = dealer.appendRequest(players[1]);
+        dealer.removeCardsFromTable();
+        assertEquals(Claim.Verdict.STALE, stale.getVerdict());
+        assertEquals(1, players[0].getScore());
+        assertEquals(0, players[1].getScore());
+        assertEquals(0, table.countTokens(players[1].getId()));
+    }
+
+    @Test
+    void testClaimsJudgedByTimestamp(){ // the claim completed first scores, even if it was queued second
+        placeAllTokensOnValidSet(players[0].getId());
+        table.placeToken(players[1].getId(), 0);
+        table.placeToken(players[1].getId(), 1);
+        table.placeToken(players[1].getId(), 2);
+        long now = System.nanoTime();
+        dealer.appendRequest(players[1], now);
+        dealer.appendRequest(players[0], now - 1000);
+        dealer.removeCardsFromTable();
+        assertEquals(1, players[0].getScore());
+        assertEquals(0, players[1].getScore());
+        assertEquals(1, dealer.getClaimLatency(players[0].getId()).count());
+        assertEquals(1, dealer.getQueueWait(players[0].getId()).count());
+        assertEquals(1, dealer.getJudgeTime(players[1].getId()).count());
+        assertEquals(true, dealer.getClaimLatency(players[0].getId()).max() >= 1000);
+        assertEquals(true, dealer.getQueueWait(players[0].getId()).max() <= dealer.getClaimLatency(players[0].getId()).max());
+    }
+
+    @Test
+    void testGuaranteedSetDealing(){ // a table of three slots has a set after every deal
+        Properties properties = new Properties();
+        properties.put("Rows", "1");
+        properties.put("Columns", "3");
+        properties.put("FeatureSize", "3");
+        properties.put("FeatureCount", "4");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("RandomSeed", "7");
+        properties.put("GuaranteedSetDealing", "True");
+        Config smallConfig = new Config(logger, properties);
+        Env smallEnv = new Env(logger, smallConfig, ui, new UtilImpl(smallConfig));
+        Table smallTable = new Table(smallEnv);
+        Dealer smallDealer = new Dealer(smallEnv, smallTable, new Player[0]);
+        for(int deal = 0; deal < 20; deal++){
+            smallDealer.placeCardsOnTable();
+            assertEquals(1, smallTable.countSets());
+            for(int slot = 0; slot < smallConfig.tableSize; slot++)
+                smallTable.removeCard(slot);
+        }
+        assertEquals(true, smallDealer.getReshufflesAvoided() > 0);
+    }
+
+    @Test
+    void testMinimalRedeal(){ // only the cards that make room for a set are replaced, the other tokens stay
+        Properties properties = new Properties();
+        properties.put("Rows", "3");
+        properties.put("Columns", "4");
+        properties.put("FeatureSize", "3");
+        properties.put("FeatureCount", "4");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("TimeoutRedeal", "Minimal");
+        Config minimalConfig = new Config(logger, properties);
+        Env minimalEnv = new Env(logger, minimalConfig, ui, new UtilImpl(minimalConfig));
+        Table minimalTable = new Table(minimalEnv);
+        Dealer minimalDealer = new Dealer(minimalEnv, minimalTable, new Player[0]);
+        int[] board = {0, 1, 3, 4, 9, 10, 12, 13, 27, 28, 30, 31}; // no set: every feature is 0 or 1
+        for(int slot = 0; slot < board.length; slot++){
+            minimalTable.placeCard(board[slot], slot);
+            minimalDealer.getDeck().take(board[slot]);
+        }
+        for(int slot = 0; slot < 2 * minimalConfig.featureSize; slot++)
+            minimalTable.placeToken(slot % 2, slot);
+        assertEquals(0, minimalTable.countSets());
+
+        minimalDealer.redealOnTimeout();
+        assertEquals(true, minimalTable.countSets() > 0);
+        int replaced = 0;
+        for(int slot = 0; slot < board.length; slot++){
+            if(minimalTable.slotToCard[slot] == board[slot])
+                assertEquals(slot < 2 * minimalConfig.featureSize, minimalTable.hasTokenOn(slot % 2, slot));
+            else
+                replaced++;
+        }
+        assertEquals(true, replaced >= 1 && replaced <= minimalConfig.featureSize);
+        assertEquals(minimalConfig.deckSize - board.length, minimalDealer.getDeck().size());
+    }
+
+    @Test
+    void testMinimalRedealOnPartlyFilledTable(){ // the set completing the table's cards goes to an empty slot
+        Properties properties = new Properties();
+        properties.put("TableDelaySeconds", "0");
+        properties.put("TimeoutRedeal", "Minimal");
+        Config minimalConfig = new Config(logger, properties);
+        Env minimalEnv = new Env(logger, minimalConfig, ui, new UtilImpl(minimalConfig));
+        Table minimalTable = new Table(minimalEnv);
+        Dealer minimalDealer = new Dealer(minimalEnv, minimalTable, new Player[0]);
+        int[] board = {0, 1}; // completed by card 2 only, and both are part of the set
+        for(int slot = 0; slot < board.length; slot++){
+            minimalTable.placeCard(board[slot], slot);
+            minimalDealer.getDeck().take(board[slot]);
+        }
+
+        minimalDealer.redealOnTimeout();
+        assertEquals(1, minimalTable.countSets());
+        assertEquals(0, minimalTable.slotToCard[0]);
+        assertEquals(1, minimalTable.slotToCard[1]);
+        assertEquals(true, minimalTable.cardToSlot[2] != Table.NONE);
+        assertEquals(minimalConfig.deckSize - 3, minimalDealer.getDeck().size());
+    }
+
+    @Test
+    void testNonClassicDeckConstructedQuickly(){ // no exact count of the sets in a 625-card deck of 5-card sets
+        Properties properties = new Properties();
+        properties.put("FeatureSize", "5");
+        properties.put("FeatureCount", "4");
+        properties.put("TableDelaySeconds", "0");
+        Config bigConfig = new Config(logger, properties);
+        Env bigEnv = new Env(logger, bigConfig, ui, new UtilImpl(bigConfig));
+        Table bigTable = new Table(bigEnv);
+        Dealer bigDealer = assertTimeoutPreemptively(Duration.ofSeconds(2), () -> new Dealer(bigEnv, bigTable, new Player[0]));
+        bigDealer.placeCardsOnTable();
+        assertEquals(bigConfig.tableSize, bigTable.countCards());
+    }
+
     @Test
     void testAnnounceWinners(){ // tests judgment of winners
         for(int i=0; i<env.config.players; i++){
@@ -0,0 +1,47 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeckTest {
+
+    @Test
+    void draw_EveryCardOnce() {
+        Deck deck = new Deck(81, new Random(1));
+        boolean[] drawn = new boolean[81];
+        while (!deck.isEmpty()) {
+            int card = deck.draw();
+            assertFalse(drawn[card]);
+            assertFalse(deck.contains(card));
+            drawn[card] = true;
+        }
+        for (boolean card : drawn)
+            assertTrue(card);
+    }
+
+    @Test
+    void draw_SameSeedSameGame() {
+        Deck first = new Deck(81, new Random(42));
+        Deck second = new Deck(81, new Random(42));
+        for (int i = 0; i < 81; ++i)
+            assertEquals(first.draw(), second.draw());
+    }
+
+    @Test
+    void takeAndAdd() {
+        Deck deck = new Deck(5, new Random(1));
+        assertTrue(deck.take(3));
+        assertFalse(deck.take(3));
+        assertEquals(4, deck.size());
+        assertArrayEquals(new int[]{0, 1, 2, 4}, deck.toArray());
+        deck.add(3);
+        assertTrue(deck.contains(3));
+        assertEquals(5, deck.size());
+    }
+}
@@ -0,0 +1,58 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FeatureIndexTest {
+
+    FeatureIndex index;
+
+    @BeforeEach
+    void setUp() {
+        // purposely do not find the configuration files (use defaults here).
+        Logger logger = Logger.getAnonymousLogger();
+        Config config = new Config(logger, "");
+        index = new FeatureIndex(new Env(logger, config, new TableTest.MockUserInterface(), new UtilImpl(config)));
+        // feature 0 is the most significant base-3 digit of the card id
+        for (int card : new int[]{0, 1, 5, 27, 40, 80})
+            index.add(card);
+    }
+
+    @Test
+    void all() {
+        assertEquals(6, index.count(index.all()));
+        assertArrayEquals(new int[]{0, 1, 5, 27, 40, 80}, index.cards(index.all()));
+    }
+
+    @Test
+    void and() {
+        assertArrayEquals(new int[]{0, 1, 5}, index.cards(index.with(0, 0)));
+        assertArrayEquals(new int[]{40}, index.cards(index.and(index.with(0, 1), 1, 1)));
+        assertArrayEquals(new int[]{1, 40}, index.cards(index.and(index.all(), 3, 1)));
+    }
+
+    @Test
+    void andNot() {
+        assertArrayEquals(new int[]{27, 40, 80}, index.cards(index.andNot(index.all(), 0, 0)));
+        assertArrayEquals(new int[]{5, 80}, index.cards(index.andNot(index.andNot(index.all(), 3, 0), 3, 1)));
+    }
+
+    @Test
+    void remove() {
+        index.remove(40);
+        assertFalse(index.contains(40));
+        assertTrue(index.contains(27));
+        assertArrayEquals(new int[]{27}, index.cards(index.with(0, 1)));
+        assertEquals(0, index.count(index.and(index.all(), 1, 1)));
+    }
+}
@@ -0,0 +1,81 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HintServiceTest {
+
+    Env env;
+    Table table;
+    HintService hintService;
+    Thread hintThread;
+
+    @BeforeEach
+    void setUp() {
+        Logger logger = Logger.getAnonymousLogger();
+        Properties properties = new Properties();
+        properties.put("TableDelaySeconds", "0");
+        properties.put("Hints", "False");
+        Config config = new Config(logger, properties);
+        env = new Env(logger, config, new TableTest.MockUserInterface(), new UtilImpl(config));
+        table = new Table(env);
+        hintService = new HintService(env, table);
+        hintThread = new Thread(hintService);
+        hintThread.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        hintService.terminate();
+        hintThread.join();
+    }
+
+    private TableAnalysis awaitAnalysisOfTable() throws InterruptedException {
+        for (int i = 0; i < 500; ++i) {
+            TableAnalysis latest = hintService.getLatest();
+            if (latest != null && latest.getHash() == table.boardHash())
+                return latest;
+            Thread.sleep(10);
+        }
+        throw new AssertionError("the table was not analyzed");
+    }
+
+    @Test
+    void publishesAnalysisOfEachBoard() throws InterruptedException {
+        assertEquals(0, awaitAnalysisOfTable().countSets());
+
+        table.placeCard(0, 0);
+        table.placeCard(1, 5);
+        table.placeCard(2, 7);
+        TableAnalysis analysis = awaitAnalysisOfTable();
+        assertEquals(1, analysis.countSets());
+        assertTrue(analysis.getHints().contains("slots: [0, 5, 7]"));
+
+        table.removeCard(5);
+        assertEquals(0, awaitAnalysisOfTable().countSets());
+    }
+
+    @Test
+    void analyzesOnDemandWhenNotRunning() {
+        HintService idle = new HintService(env, table); // as with hints off: its thread is never started
+        table.placeCard(0, 0);
+        table.placeCard(1, 5);
+        table.placeCard(2, 7);
+        TableAnalysis analysis = idle.getLatest();
+        assertEquals(table.boardHash(), analysis.getHash());
+        assertEquals(1, analysis.countSets());
+
+        table.removeCard(5);
+        assertEquals(0, idle.getLatest().countSets());
+    }
+}
@@ -0,0 +1,33 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LatencyHistogramTest {
+
+    @Test
+    void percentile_WithinABucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(0.5));
+        for (int i = 0; i < 99; ++i)
+            histogram.record(1000); // bucket [512, 1024)
+        histogram.record(1_000_000);
+        assertEquals(100, histogram.count());
+        assertEquals(1023, histogram.percentile(0.5));
+        assertEquals(1023, histogram.percentile(0.99));
+        assertEquals(1_000_000, histogram.percentile(1));
+        assertEquals(1_000_000, histogram.max());
+        assertEquals((99 * 1000 + 1_000_000) / 100, histogram.mean());
+    }
+
+    @Test
+    void record_NegativeIsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(0);
+        assertEquals(2, histogram.count());
+        assertEquals(0, histogram.percentile(1));
+        assertEquals(0, histogram.mean());
+    }
+}
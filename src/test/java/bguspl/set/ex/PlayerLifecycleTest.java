@@ -0,0 +1,41 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PlayerLifecycleTest {
+
+    @Test
+    void startAndStop_ManyComputerPlayers() {
+        Logger logger = Logger.getAnonymousLogger();
+        Properties properties = new Properties();
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", "50");
+        properties.put("TableDelaySeconds", "0");
+        Config config = new Config(logger, properties);
+        Env env = new Env(logger, config, new TableTest.MockUserInterface(), new UtilImpl(config));
+        Table table = new Table(env);
+        Player[] players = new Player[config.players];
+        Dealer dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, false);
+
+        PlayerLifecycle lifecycle = dealer.getLifecycle();
+        long begin = System.currentTimeMillis();
+        lifecycle.threadStarted(); // outside start: does not wait for the gate
+        assertEquals(true, System.currentTimeMillis() - begin < config.startupTimeoutMillis);
+        assertEquals(true, lifecycle.start());
+        assertEquals(false, lifecycle.start()); // the players run already
+        assertEquals(true, lifecycle.stop());
+        assertEquals(true, lifecycle.stop()); // only the first call stops the players
+        assertEquals(3, lifecycle.getStartupTimings().size());
+        assertEquals(2, lifecycle.getShutdownTimings().size());
+    }
+}
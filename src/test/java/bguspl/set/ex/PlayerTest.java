@@ -25,6 +25,7 @@ import java.util.logging.Logger;
 class PlayerTest {
 
     Player player;
+    Env env;
     @Mock
     Util util;
     @Mock
@@ -46,7 +47,7 @@ class PlayerTest {
         // purposely do not find the configuration files (use defaults here).
         logger = Logger.getAnonymousLogger();
 
-        Env env = new Env(logger,new Config(logger,""), ui, util);
+        env = new Env(logger,new Config(logger,""), ui, util);
         player = new Player(env, dealer, table, 0, false);
         assertInvariants();
     }
@@ -73,6 +74,18 @@ class PlayerTest {
         verify(ui).setScore(eq(player.id), eq(expectedScore));
     }
 
+    @Test
+    void applyPenalty_IgnoresKeysWhileFrozen() {
+        TimerWheel timers = new TimerWheel(env, 10, 16); // not running: the freeze display is not updated
+        when(dealer.getTimers()).thenReturn(timers);
+        player.applyPenalty(); // returns at once, the player is not put to sleep
+        assertEquals(true, player.isFrozen());
+        player.keyPressed(5);
+        assertEquals(true, player.getActionOnSlot().isEmpty());
+        verify(ui).setFreeze(eq(player.id), eq(env.config.penaltyFreezeMillis));
+        assertEquals(1, timers.size());
+    }
+
     @Test
     void keyPressed(){
        // when(player.getActionOnSlot().size()).thenReturn((Integer)0); // this part is just for demonstration
@@ -0,0 +1,69 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Util;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SetTrackerTest {
+
+    private static Config config(int featureSize, int featureCount) {
+        Properties properties = new Properties();
+        properties.put("FeatureSize", Integer.toString(featureSize));
+        properties.put("FeatureCount", Integer.toString(featureCount));
+        return new Config(Logger.getAnonymousLogger(), properties);
+    }
+
+    private static void assertTracksCountSets(Config config) {
+        Util util = new UtilImpl(config);
+        SetTracker tracker = new SetTracker(config, util);
+        boolean[] in = new boolean[config.deckSize];
+        Random random = new Random(config.featureSize * 31 + config.featureCount);
+        for (int step = 0; step < 300; ++step) {
+            int card = random.nextInt(config.deckSize);
+            if (in[card]) tracker.remove(card);
+            else tracker.add(card);
+            in[card] = !in[card];
+
+            int[] cards = new int[tracker.size()];
+            for (int c = 0, i = 0; c < config.deckSize; ++c)
+                if (in[c]) cards[i++] = c;
+            assertEquals(util.countSets(cards), tracker.countSets());
+            assertEquals(in[card], tracker.contains(card));
+        }
+    }
+
+    @Test
+    void countSets_ClassicDeck() {
+        assertTracksCountSets(config(3, 4));
+    }
+
+    @Test
+    void countSets_OtherDecks() {
+        assertTracksCountSets(config(4, 3));
+        assertTracksCountSets(config(2, 5));
+        assertTracksCountSets(config(1, 4));
+    }
+
+    @Test
+    void reset() {
+        Config config = config(3, 4);
+        SetTracker tracker = new SetTracker(config, new UtilImpl(config));
+        tracker.add(7);
+        tracker.reset(new int[]{0, 1, 2}, 1);
+        assertFalse(tracker.contains(7));
+        assertTrue(tracker.contains(1));
+        tracker.add(3);
+        assertEquals(1, tracker.countSets());
+        tracker.remove(2);
+        assertEquals(0, tracker.countSets());
+    }
+}
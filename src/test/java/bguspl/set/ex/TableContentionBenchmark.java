@@ -0,0 +1,102 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Measures Table throughput under contention: every player thread keeps toggling tokens on random slots and claims
+ * its slots whenever all its tokens are placed, while a dealer thread keeps replacing cards.
+ * Tagged "benchmark", so that mvn test skips it; run it with mvn test -Pbenchmark.
+ */
+@Tag("benchmark")
+class TableContentionBenchmark {
+
+    private static final int[] PLAYERS = {2, 4, 8, 16, 32, 64};
+    private static final long MEASURE_MILLIS = 2000;
+
+    @Test
+    void throughputFrom2To64Players() throws InterruptedException {
+        run(8, MEASURE_MILLIS / 2); // warm up
+        System.out.printf("%8s %14s %14s%n", "players", "ops/sec", "ops/sec/player");
+        for (int players : PLAYERS) {
+            double opsPerSecond = run(players, MEASURE_MILLIS);
+            System.out.printf("%8d %14.0f %14.0f%n", players, opsPerSecond, opsPerSecond / players);
+            assertTrue(opsPerSecond > 0);
+        }
+    }
+
+    private static double run(int players, long millis) throws InterruptedException {
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setLevel(Level.OFF);
+        Properties properties = new Properties();
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", Integer.toString(players));
+        properties.put("TableDelaySeconds", "0");
+        Config config = new Config(logger, properties);
+        Table table = new Table(new Env(logger, config, new TableTest.MockUserInterface(), new UtilImpl(config)));
+        for (int slot = 0; slot < config.tableSize; ++slot)
+            table.placeCard(slot, slot);
+
+        LongAdder operations = new LongAdder();
+        long deadline = System.nanoTime() + millis * 1_000_000L;
+        Thread[] threads = new Thread[players + 1];
+        for (int i = 0; i < players; ++i) {
+            int player = i;
+            threads[i] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long done = 0;
+                while (System.nanoTime() < deadline) {
+                    if (table.allTokensPlaced(player)) {
+                        int[] tokens = table.copyTokens(player);
+                        table.lockSlots(tokens);
+                        try {
+                            table.hasTokensOn(player, tokens);
+                        } finally {
+                            table.unlockSlots(tokens);
+                        }
+                        table.removeToken(player, tokens[0]);
+                    } else {
+                        int slot = random.nextInt(config.tableSize);
+                        if (!table.removeToken(player, slot))
+                            table.placeToken(player, slot);
+                    }
+                    ++done;
+                }
+                operations.add(done);
+            });
+        }
+        threads[players] = new Thread(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int nextCard = config.tableSize;
+            while (System.nanoTime() < deadline) {
+                int slot = random.nextInt(config.tableSize);
+                table.removeCard(slot);
+                table.placeCard(nextCard, slot);
+                nextCard = nextCard + 1 < config.deckSize ? nextCard + 1 : config.tableSize;
+                while (table.cardToSlot[nextCard] != Table.NONE)
+                    nextCard = nextCard + 1 < config.deckSize ? nextCard + 1 : 0;
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException ignored) {}
+            }
+        });
+
+        long start = System.nanoTime();
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+        return operations.sum() * 1e9 / (System.nanoTime() - start);
+    }
+}
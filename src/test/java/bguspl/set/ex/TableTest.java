@@ -2,9 +2,11 @@ package bguspl.set.ex;
 
 import bguspl.set.Config;
 import bguspl.set.Env;
+import bguspl.set.FeatureTable;
 import bguspl.set.UserInterface;
 import bguspl.set.UserInterfaceImpl;
 import bguspl.set.Util;
+import bguspl.set.UtilImpl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
@@ -12,6 +14,7 @@ import org.mockito.Mock;
 import java.util.List;
 import java.util.Properties;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.verify;
@@ -21,9 +24,9 @@ class TableTest {
     @Mock
     Table table;
     @Mock
-    private Integer[] slotToCard;
+    private int[] slotToCard;
     @Mock
-    private Integer[] cardToSlot;
+    private int[] cardToSlot;
     @Mock
     Player[] players;
     @Mock
@@ -47,9 +50,10 @@ class TableTest {
         properties.put("PlayerKeys1", "81,87,69,82");
         properties.put("PlayerKeys2", "85,73,79,80");
         Config config = new Config(logger, properties);
-        slotToCard = new Integer[config.tableSize];
-        cardToSlot = new Integer[config.deckSize];
+        slotToCard = Table.emptyMapping(config.tableSize);
+        cardToSlot = Table.emptyMapping(config.deckSize);
         ui = new UserInterfaceImpl(config);
+        util = new UtilImpl(config);
         Env env = new Env(logger, config, ui, util);
         table = new Table(env, slotToCard, cardToSlot);
         players = new Player[env.config.players];
@@ -79,8 +83,8 @@ class TableTest {
     private void placeSomeCardsAndAssert() {
         table.placeCard(8, 2);
 
-        assertEquals(8, (int) slotToCard[2]);
-        assertEquals(2, (int) cardToSlot[8]);
+        assertEquals(8, slotToCard[2]);
+        assertEquals(2, cardToSlot[8]);
     }
 
     @Test
@@ -120,7 +124,7 @@ class TableTest {
         int tokenOnSlot = 3;
         placeCard_AllSlotsAreFilled();
         table.placeToken(players[0].getId(), tokenOnSlot);
-        assertEquals(3 , table.getTokens(players[0].getId()).get(0));
+        assertEquals(3 , table.getTokens(players[0].getId())[0]);
        // verify(ui).placeToken(players[0].getId(), tokenOnSlot);
         table.placeToken(players[0].getId(), 1);
         table.placeToken(players[0].getId(), 2);
@@ -132,8 +136,61 @@ class TableTest {
         int slot = 3;
         int card = table.slotToCard[slot];
         table.removeCard(slot);
-        assertEquals(null , table.slotToCard[slot]);
-        assertEquals(null , table.cardToSlot[card]);
+        assertEquals(Table.NONE , table.slotToCard[slot]);
+        assertEquals(Table.NONE , table.cardToSlot[card]);
+    }
+
+    @Test
+    void removeCardRemovesTokens(){
+        placeCard_AllSlotsAreFilled();
+        table.placeToken(players[0].getId(), 3);
+        table.placeToken(players[0].getId(), 1);
+        table.placeToken(players[1].getId(), 3);
+        table.removeCard(3);
+        assertEquals(false, table.hasTokenOn(players[0].getId(), 3));
+        assertEquals(false, table.hasTokenOn(players[1].getId(), 3));
+        assertEquals(1, table.countTokens(players[0].getId()));
+        assertEquals(1, table.getTokens(players[0].getId())[0]);
+        assertEquals(0, table.countTokens(players[1].getId()));
+    }
+
+    @Test
+    void countSets(){
+        table.placeCard(0, 0);
+        table.placeCard(1, 1);
+        assertEquals(0, table.countSets());
+        table.placeCard(2, 2); // 0000, 0001, 0002
+        assertEquals(1, table.countSets());
+        table.placeCard(5, 3); // 0012 completes 0001 and 0020, which is not on the table
+        assertEquals(1, table.countSets());
+        table.removeCard(1);
+        assertEquals(0, table.countSets());
+    }
+
+    @Test
+    void analyze_RecurringBoardHitsTheCache(){
+        long empty = table.boardHash();
+        table.placeCard(0, 0);
+        table.placeCard(1, 1);
+        table.placeCard(2, 2);
+        long board = table.boardHash();
+        TableAnalysis analysis = table.analyze();
+        assertEquals(1, analysis.countSets());
+        assertEquals("Hint: Set found: slots: [0, 1, 2] features: [[0, 0, 0, 0], [0, 0, 0, 1], [0, 0, 0, 2]]"
+                + System.lineSeparator(), analysis.getHints());
+
+        table.removeCard(2);
+        assertEquals(0, table.analyze().countSets());
+        table.placeCard(2, 2);
+        assertEquals(board, table.boardHash());
+        assertEquals(analysis, table.analyze());
+        assertEquals(1, table.getAnalysisCache().hits());
+        assertEquals(2, table.getAnalysisCache().misses());
+
+        table.removeCard(0);
+        table.removeCard(1);
+        table.removeCard(2);
+        assertEquals(empty, table.boardHash());
     }
 
     static class MockUserInterface implements UserInterface {
@@ -196,6 +253,11 @@ class TableTest {
     };
 
     static class MockUtil implements Util {
+        @Override
+        public FeatureTable featureTable() {
+            return null;
+        }
+
         @Override
         public int[] cardToFeatures(int card) {
             return new int[0];
@@ -211,11 +273,40 @@ class TableTest {
             return false;
         }
 
+        @Override
+        public void testSets(int[] flatCandidates, int k, boolean[] out) {
+        }
+
         @Override
         public List<int[]> findSets(List<Integer> deck, int count) {
             return null;
         }
 
+        @Override
+        public Stream<int[]> streamSets(int[] cards) {
+            return Stream.empty();
+        }
+
+        @Override
+        public boolean hasAnySet(int[] cards) {
+            return false;
+        }
+
+        @Override
+        public long countSets(int[] cards) {
+            return 0;
+        }
+
+        @Override
+        public long countSetsExact(int[] cards) {
+            return 0;
+        }
+
+        @Override
+        public int completeSet(int[] cards) {
+            return -1;
+        }
+
         @Override
         public void spin() {
             // TODO Auto-generated method stub
@@ -0,0 +1,65 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimerWheelTest {
+
+    TimerWheel timers;
+    Thread thread;
+
+    @BeforeEach
+    void setUp() {
+        // purposely do not find the configuration files (use defaults here).
+        Logger logger = Logger.getAnonymousLogger();
+        Env env = new Env(logger, new Config(logger, ""), null, null);
+        timers = new TimerWheel(env, 5, 16);
+        thread = new Thread(timers, "timers");
+        thread.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        timers.terminate();
+        thread.join();
+    }
+
+    @Test
+    void schedule_NeverEarly() throws InterruptedException {
+        int count = 1000;
+        CountDownLatch done = new CountDownLatch(count);
+        AtomicInteger early = new AtomicInteger();
+        for (int i = 0; i < count; ++i) {
+            long delay = i % 200; // some are more than a turn of the wheel away
+            long due = System.currentTimeMillis() + delay;
+            timers.schedule(delay, () -> {
+                if (System.currentTimeMillis() < due) early.incrementAndGet();
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, early.get());
+        assertEquals(0, timers.size());
+    }
+
+    @Test
+    void cancel_DoesNotRun() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+        timers.schedule(30, runs::incrementAndGet).cancel();
+        timers.schedule(60, done::countDown);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, runs.get());
+    }
+}